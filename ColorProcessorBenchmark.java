@@ -0,0 +1,318 @@
+/* ColorProcessorBenchmark.java - measures how ColorVisionProcessor scales
+ * Copyright (C) 2023 LAtimes2
+ *
+ * MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission
+ * notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//////////////////////////////////////////////////////////
+//
+// This class measures how long ColorVisionProcessor.processFrame takes as the work grows,
+// so you know how many regions (and how big) fit in a frame before a competition.
+//
+// Starting from the normal setup (3 regions of 60x80, 5 pixel squares, 640x480 frame, half of
+// each region colored), it changes one thing at a time: the number of regions, the region size,
+// the square size, the frame size, and how much of each region is colored. Each case is run with
+// the OpenCV search, the pixel kernel, and the hue histogram. Frames come from the
+// SyntheticFrameGenerator, so no camera is needed.
+//
+// For each case it reports the average and worst processFrame time, ns per region pixel,
+// ns per square, and the Java objects and bytes allocated per frame (OpenCV's own memory is
+// not included). Cases whose average is over the 33 ms frame budget are marked with "OVER",
+// and the others with "ok".
+//
+// It is run on the Control Hub by ConceptColorProcessorBenchmark, and on a computer by
+// DesktopBenchmark in the desktop folder. Each one passes in its own way of counting
+// allocations.
+//
+/////////////////////////////////////////////////////////
+
+public class ColorProcessorBenchmark {
+
+    // counts the Java memory allocated by the thread running the benchmark
+    public interface AllocationCounter {
+        void start();
+        void stop();
+
+        // the objects or bytes allocated between start and stop, or -1 if they can't be counted
+        long getCount();
+        long getBytes();
+    }
+
+    // lets the caller show which case is running, and stop early
+    public interface Progress {
+        void caseStarted(String description);
+        boolean keepRunning();
+    }
+
+    public static final String HEADER =
+        "sweep,search,regions,regionWidth,regionHeight,squareSize,frameWidth,frameHeight,density,"
+      + "avgMs,maxMs,nsPerPixel,nsPerSquare,allocsPerFrame,bytesPerFrame,overBudget";
+
+    // a 30 frame per second camera gives 33 ms per frame
+    private static final double FRAME_BUDGET_MS = 33.0;
+
+    private static final int WARMUP_FRAMES = 3;
+    private static final int TIMED_FRAMES = 20;
+
+    // the normal setup, which each sweep starts from
+    private static final int BASE_REGIONS = 3;
+    private static final int BASE_REGION_WIDTH = 60;
+    private static final int BASE_REGION_HEIGHT = 80;
+    private static final int BASE_SQUARE_SIZE = 5;
+    private static final int BASE_FRAME_WIDTH = 640;
+    private static final int BASE_FRAME_HEIGHT = 480;
+    private static final double BASE_DENSITY = 0.5;
+
+    // the values tried for each sweep
+    private static final int[] REGION_COUNTS = { 1, 3, 6, 12, 24 };
+    private static final int[][] REGION_SIZES = { { 30, 40 }, { 60, 80 }, { 120, 160 }, { 240, 320 } };
+    private static final int[] SQUARE_SIZES = { 3, 5, 8, 10 };
+    private static final int[][] FRAME_SIZES = { { 320, 240 }, { 640, 480 }, { 1280, 720 } };
+    private static final double[] DENSITIES = { 0.0, 0.25, 0.5, 1.0 };
+
+    // the ways the processor can search a region
+    private static final String[] SEARCHES = { "opencv", "kernel", "histogram" };
+
+    // hues used to color the regions: green, red, blue
+    private static final int[] REGION_HUES = { 75, 177, 105 };
+
+    private final AllocationCounter allocationCounter;
+    private final Progress progress;
+
+    private final List<String> report = new ArrayList<String>();
+    private int overBudget = 0;
+
+    // constructor
+    public ColorProcessorBenchmark(AllocationCounter allocationCounter, Progress progress) {
+        this.allocationCounter = allocationCounter;
+        this.progress = progress;
+    }
+
+    //
+    // Runs all of the cases, and returns the report as CSV lines, starting with HEADER.
+    // This takes a few minutes on the Control Hub.
+    //
+    public List<String> run() {
+        report.clear();
+        overBudget = 0;
+
+        report.add(HEADER);
+
+        for (int regions : REGION_COUNTS) {
+            runCase("regions", regions, BASE_REGION_WIDTH, BASE_REGION_HEIGHT, BASE_SQUARE_SIZE,
+                    BASE_FRAME_WIDTH, BASE_FRAME_HEIGHT, BASE_DENSITY);
+        }
+        for (int[] size : REGION_SIZES) {
+            runCase("regionSize", BASE_REGIONS, size[0], size[1], BASE_SQUARE_SIZE,
+                    BASE_FRAME_WIDTH, BASE_FRAME_HEIGHT, BASE_DENSITY);
+        }
+        for (int squareSize : SQUARE_SIZES) {
+            runCase("squareSize", BASE_REGIONS, BASE_REGION_WIDTH, BASE_REGION_HEIGHT, squareSize,
+                    BASE_FRAME_WIDTH, BASE_FRAME_HEIGHT, BASE_DENSITY);
+        }
+        for (int[] size : FRAME_SIZES) {
+            runCase("frameSize", BASE_REGIONS, BASE_REGION_WIDTH, BASE_REGION_HEIGHT, BASE_SQUARE_SIZE,
+                    size[0], size[1], BASE_DENSITY);
+        }
+        for (double density : DENSITIES) {
+            runCase("density", BASE_REGIONS, BASE_REGION_WIDTH, BASE_REGION_HEIGHT, BASE_SQUARE_SIZE,
+                    BASE_FRAME_WIDTH, BASE_FRAME_HEIGHT, density);
+        }
+
+        return report;
+    }
+
+    public int getOverBudgetCount() {
+        return overBudget;
+    }
+
+    private void runCase(String sweep, int numRegions, int regionWidth, int regionHeight, int squareSize,
+                         int frameWidth, int frameHeight, double density) {
+
+        for (String search : SEARCHES) {
+            if (!progress.keepRunning()) {
+                return;
+            }
+
+            ColorProcessorConfig config = makeConfig(numRegions, regionWidth, regionHeight, squareSize, frameWidth, frameHeight);
+            ColorVisionProcessor processor = new ColorVisionProcessor(config);
+            processor.UsePixelKernel = search.equals("kernel");
+            processor.UseHueHistogram = search.equals("histogram");
+            processor.init(frameWidth, frameHeight, null);
+
+            SyntheticFrameGenerator generator = makeFrame(config, frameWidth, frameHeight, density);
+
+            progress.caseStarted(String.format("%s %d regions %dx%d sq %d frame %dx%d density %.2f %s",
+                sweep, numRegions, regionWidth, regionHeight, squareSize, frameWidth, frameHeight, density, search));
+
+            for (int frame = 0; frame < WARMUP_FRAMES; ++frame) {
+                processor.processFrame(generator.getFrame(), System.nanoTime());
+            }
+
+            long totalNanos = 0;
+            long maxNanos = 0;
+            long allocCount = 0;
+            long allocBytes = 0;
+            int frames = 0;
+
+            for (int frame = 0; frame < TIMED_FRAMES && progress.keepRunning(); ++frame) {
+                // getFrame redraws the frame, since processFrame draws the squares on it
+                Mat input = generator.getFrame();
+
+                allocationCounter.start();
+
+                long startNanos = System.nanoTime();
+                processor.processFrame(input, startNanos);
+                long frameNanos = System.nanoTime() - startNanos;
+
+                allocationCounter.stop();
+                allocCount += allocationCounter.getCount();
+                allocBytes += allocationCounter.getBytes();
+
+                totalNanos += frameNanos;
+                maxNanos = Math.max(maxNanos, frameNanos);
+                frames++;
+            }
+
+            processor.close();
+
+            if (frames == 0) {
+                return;
+            }
+
+            long regionPixels = 0;
+            long squares = 0;
+            for (int region = 0; region < numRegions; ++region) {
+                int width = config.getRegionWidth(region);
+                int height = config.getRegionHeight(region);
+
+                regionPixels += (long) width * height;
+                squares += (long) Math.max(0, (height - 1) / squareSize) * Math.max(0, (width - 1) / squareSize);
+            }
+
+            double averageNanos = (double) totalNanos / frames;
+            double averageMs = averageNanos / 1.0e6;
+            boolean over = averageMs > FRAME_BUDGET_MS;
+            if (over) {
+                overBudget++;
+            }
+
+            report.add(String.format("%s,%s,%d,%d,%d,%d,%d,%d,%.2f,%.2f,%.2f,%.1f,%.0f,%s,%s,%s",
+                sweep, search, numRegions, regionWidth, regionHeight, squareSize, frameWidth, frameHeight, density,
+                averageMs, maxNanos / 1.0e6,
+                averageNanos / Math.max(1, regionPixels), averageNanos / Math.max(1, squares),
+                perFrame(allocCount, frames), perFrame(allocBytes, frames),
+                over ? "OVER" : "ok"));
+        }
+    }
+
+    // the counters give -1 for each frame if they can't count
+    private String perFrame(long total, int frames) {
+        if (total < 0) {
+            return "n/a";
+        }
+        return Long.toString(total / frames);
+    }
+
+    //
+    // Lays out the regions in a grid on the frame. If there are more regions than fit,
+    // the grid starts over at the top left, so some regions cover the same pixels.
+    //
+    private ColorProcessorConfig makeConfig(int numRegions, int regionWidth, int regionHeight, int squareSize,
+                                            int frameWidth, int frameHeight) {
+        // regions can't be bigger than the frame
+        regionWidth = Math.min(regionWidth, frameWidth);
+        regionHeight = Math.min(regionHeight, frameHeight);
+
+        int columns = Math.max(1, frameWidth / (regionWidth + 4));
+        int rows = Math.max(1, frameHeight / (regionHeight + 4));
+
+        Point[] topLeft = new Point[numRegions];
+        int[] width = new int[numRegions];
+        int[] height = new int[numRegions];
+
+        for (int region = 0; region < numRegions; ++region) {
+            int cell = region % (columns * rows);
+
+            topLeft[region] = new Point((cell % columns) * (regionWidth + 4), (cell / columns) * (regionHeight + 4));
+            width[region] = regionWidth;
+            height[region] = regionHeight;
+        }
+
+        ColorProcessorConfig defaults = new ColorProcessorConfig();
+
+        return new ColorProcessorConfig(topLeft, width, height,
+            defaults.getMinSaturation(), defaults.getMinBrightness(), defaults.getMaxStdDev(), squareSize);
+    }
+
+    // colors the top part of each region (density is the fraction colored) and adds noise
+    private SyntheticFrameGenerator makeFrame(ColorProcessorConfig config, int frameWidth, int frameHeight, double density) {
+        SyntheticFrameGenerator generator = new SyntheticFrameGenerator(frameWidth, frameHeight, 1);
+
+        generator.clear(0, 0, 128);
+
+        for (int region = 0; region < config.getNumRegions(); ++region) {
+            Point topLeft = config.getRegionTopLeft(region);
+            int coloredHeight = (int) Math.round(config.getRegionHeight(region) * density);
+
+            if (coloredHeight > 0) {
+                generator.addPatch(new Rect((int) topLeft.x, (int) topLeft.y, config.getRegionWidth(region), coloredHeight),
+                                   REGION_HUES[region % REGION_HUES.length], 200, 200);
+            }
+        }
+        generator.addNoise(2, 8);
+
+        return generator;
+    }
+
+    // a short form of a report line for a narrow screen: the case and the timing
+    public static String shortLine(String line) {
+        String[] fields = line.split(",", -1);
+
+        return String.format("%s %s %s: %s %s %s %s %s %s",
+            fields[0], fieldForSweep(fields), fields[1],
+            fields[9], fields[10], fields[11], fields[12], fields[13], fields[15]);
+    }
+
+    private static String fieldForSweep(String[] fields) {
+        switch (fields[0]) {
+            case "regions":
+                return fields[2];
+            case "regionSize":
+                return fields[3] + "x" + fields[4];
+            case "squareSize":
+                return fields[5];
+            case "frameSize":
+                return fields[6] + "x" + fields[7];
+            default:
+                return fields[8];
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/* ColorProcessorConfig.java - settings for ColorVisionProcessor
+ * Copyright (C) 2023 LAtimes2
+ *
+ * MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission
+ * notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import org.opencv.core.Point;
+
+//////////////////////////////////////////////////////////
+//
+// This class holds the regions and color thresholds for a ColorVisionProcessor.
+//
+// It can't be changed after it is made. To change a setting, use one of the
+// "with" functions to make a new config and pass it to the processor. The
+// processor starts using it at the start of the next frame, so a frame never
+// sees half of the old settings and half of the new ones.
+//
+// Example:
+//
+//      ColorProcessorConfig config = colorProcessor.getConfig()
+//          .withRegion(0, new Point(109, 98), 60, 80)
+//          .withMinSaturation(120);
+//      colorProcessor.setConfig(config);
+//
+/////////////////////////////////////////////////////////
+
+public class ColorProcessorConfig {
+
+    private final Point[] regionTopLeft;
+    private final int[] regionWidth;
+    private final int[] regionHeight;
+
+    private final int minSaturation;
+    private final int minBrightness;
+    private final double maxStdDev;
+    private final int squareSize;
+
+    // constructor with the default values.
+    // For webcam, screen size is (0,0) to (639,479)
+    public ColorProcessorConfig() {
+        this(new Point[] { new Point(109, 98), new Point(181, 98), new Point(253, 98) },
+             new int[] { 60, 60, 60 },
+             new int[] { 80, 80, 80 },
+             100, 75, 10);
+    }
+
+    // constructor. The number of regions is the length of the arrays.
+    public ColorProcessorConfig(Point[] regionTopLeft, int[] regionWidth, int[] regionHeight,
+                                int minSaturation, int minBrightness, double maxStdDev) {
+        this(regionTopLeft, regionWidth, regionHeight, minSaturation, minBrightness, maxStdDev, 5);
+    }
+
+    // constructor with the size of the squares (in pixels) that each region is split into
+    public ColorProcessorConfig(Point[] regionTopLeft, int[] regionWidth, int[] regionHeight,
+                                int minSaturation, int minBrightness, double maxStdDev, int squareSize) {
+        if (regionWidth.length != regionTopLeft.length || regionHeight.length != regionTopLeft.length) {
+            throw new IllegalArgumentException("region arrays must be the same length");
+        }
+        if (squareSize <= 0) {
+            throw new IllegalArgumentException("square size is " + squareSize + ", must be at least 1");
+        }
+        for (int region = 0; region < regionTopLeft.length; ++region) {
+            if (regionWidth[region] <= 0 || regionHeight[region] <= 0) {
+                throw new IllegalArgumentException("region " + region + " is " + regionWidth[region] + "x" + regionHeight[region]
+                    + ", width and height must be at least 1");
+            }
+        }
+
+        // copy everything, so a change to the caller's arrays doesn't change this config
+        this.regionTopLeft = new Point[regionTopLeft.length];
+        for (int region = 0; region < regionTopLeft.length; ++region) {
+            this.regionTopLeft[region] = new Point(regionTopLeft[region].x, regionTopLeft[region].y);
+        }
+        this.regionWidth = regionWidth.clone();
+        this.regionHeight = regionHeight.clone();
+
+        this.minSaturation = minSaturation;
+        this.minBrightness = minBrightness;
+        this.maxStdDev = maxStdDev;
+        this.squareSize = squareSize;
+    }
+
+    public int getNumRegions() {
+        return regionTopLeft.length;
+    }
+
+    // returns a copy, since Point can be changed
+    public Point getRegionTopLeft(int region) {
+        return new Point(regionTopLeft[region].x, regionTopLeft[region].y);
+    }
+
+    public int getRegionWidth(int region) {
+        return regionWidth[region];
+    }
+
+    public int getRegionHeight(int region) {
+        return regionHeight[region];
+    }
+
+    public int getMinSaturation() {
+        return minSaturation;
+    }
+
+    public int getMinBrightness() {
+        return minBrightness;
+    }
+
+    public double getMaxStdDev() {
+        return maxStdDev;
+    }
+
+    public int getSquareSize() {
+        return squareSize;
+    }
+
+    // these return a new config with one setting changed
+
+    public ColorProcessorConfig withRegion(int region, Point topLeft, int width, int height) {
+        Point[] newTopLeft = regionTopLeft.clone();
+        int[] newWidth = regionWidth.clone();
+        int[] newHeight = regionHeight.clone();
+
+        newTopLeft[region] = topLeft;
+        newWidth[region] = width;
+        newHeight[region] = height;
+
+        return new ColorProcessorConfig(newTopLeft, newWidth, newHeight, minSaturation, minBrightness, maxStdDev, squareSize);
+    }
+
+    public ColorProcessorConfig withMinSaturation(int minSaturation) {
+        return new ColorProcessorConfig(regionTopLeft, regionWidth, regionHeight, minSaturation, minBrightness, maxStdDev, squareSize);
+    }
+
+    public ColorProcessorConfig withMinBrightness(int minBrightness) {
+        return new ColorProcessorConfig(regionTopLeft, regionWidth, regionHeight, minSaturation, minBrightness, maxStdDev, squareSize);
+    }
+
+    public ColorProcessorConfig withMaxStdDev(double maxStdDev) {
+        return new ColorProcessorConfig(regionTopLeft, regionWidth, regionHeight, minSaturation, minBrightness, maxStdDev, squareSize);
+    }
+
+    // the number of regions and the square size can't be changed once a ColorVisionProcessor
+    // is made, so this is only useful for the config passed to its constructor
+    public ColorProcessorConfig withSquareSize(int squareSize) {
+        return new ColorProcessorConfig(regionTopLeft, regionWidth, regionHeight, minSaturation, minBrightness, maxStdDev, squareSize);
+    }
+}
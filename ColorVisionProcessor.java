@@ -26,11 +26,15 @@ package org.firstinspires.ftc.teamcode;
 
 import org.firstinspires.ftc.vision.VisionProcessor;
 import java.util.Map;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
@@ -62,9 +66,11 @@ import org.firstinspires.ftc.robotcore.internal.camera.calibration.CameraCalibra
 //      VisionPortal visionPortal = new VisionPortal.easyCreateWithDefaults(hardwareMap.get(WebcamName.class, "Webcam 1"), colorProcessor);
 // 
 //      // example for region 0. repeat for regions 1 and 2
-//      colorProcessor.RegionTopLeft[0] = new Point(109, 98);
-//      colorProcessor.RegionWidth[0] = 60;
-//      colorProcessor.RegionHeight[0] = 80;
+//      colorProcessor.setConfig(colorProcessor.getConfig().withRegion(0, new Point(109, 98), 60, 80));
+//
+// The regions and thresholds are kept in a ColorProcessorConfig. Settings can be changed
+// while the camera is running (for example from the gamepad), and the new settings are
+// used starting with the next frame.
 
 // For a game like PowerPlay, you may want to know if a color is in a region:
 //
@@ -76,6 +82,17 @@ import org.firstinspires.ftc.robotcore.internal.camera.calibration.CameraCalibra
 //
 //      int region = colorProcessor.getRegion(ColorVisionProcessor.Color_Enum.Color_Yellow));
 //
+// If only one answer is needed, a query lets the search stop early instead of
+// checking every square:
+//
+//      colorProcessor.setDominantRegionQuery(ColorVisionProcessor.Color_Enum.Color_Red, 10);
+//      int region = colorProcessor.getQueryResult();
+//
+// If the color search slows down the other processors in the VisionPortal, it can be
+// moved to its own thread. Call close() when done with the VisionPortal:
+//
+//      colorProcessor.AsyncProcessing = true;
+//
 /////////////////////////////////////////////////////////
 
 public class ColorVisionProcessor  implements VisionProcessor {
@@ -99,70 +116,156 @@ public class ColorVisionProcessor  implements VisionProcessor {
         public int y_location;
     }
 
-    // this is a constant
-    final int NumRegions = 3;
+    // these are set by the config passed to the constructor, and can't change after that
+    final int NumRegions;
+    public final int SquareSize;               // pixel size of edge of squares for checking
+
+    // The settings below can be changed by the opMode at any time. Each one is read
+    // once per frame, so a change is used starting with the next frame.
+
+    // when true, processFrame only copies the regions and a separate worker thread
+    // does the color search. This keeps the camera thread free for other processors
+    // (such as AprilTags), but the results may be a frame behind. If it is turned off while
+    // the worker is busy, the camera thread waits for the worker's frame before its own.
+    public volatile boolean AsyncProcessing = false;
+
+    // when true, each region's pixels are copied into Java once and the squares are
+    // checked with plain loops instead of several OpenCV calls per square.
+    // The results are the same as the OpenCV version.
+    public volatile boolean UsePixelKernel = false;
 
-    // these can be configured at run time for where you
-    // want your camera to look for colors
-    public Point[] RegionTopLeft = new Point[NumRegions];
-    public int[] RegionWidth = new int[NumRegions];
-    public int[] RegionHeight = new int[NumRegions];
+    // how often the telemetry values are updated. The Driver Station only shows
+    // telemetry a few times a second, so there is no need to update it every frame.
+    public volatile int TelemetryIntervalMs = 250;
 
-    // these can be configurated but usually don't need to change
-    public final int SquareSize = 5;           // pixel size of edge of squares for checking
-    public int MinSaturation = 100;
-    public int MinBrightness = 75;
-    public double MaxStdDev = 10;
+    // when true, each region is summarized in one pass with a hue histogram and a count of
+    // colored pixels in each square, instead of the average and standard deviation of each
+    // square. A square has a color if more than half of its pixels are bright and saturated
+    // enough and have a hue for that color. This is faster, but can give slightly different
+    // results than the normal search. It is not used while a query is set.
+    public volatile boolean UseHueHistogram = false;
 
     // constructor
     public ColorVisionProcessor() {
 
-        // For webcam, screen size is (0,0) to (639,479)
+        // the default config has 3 regions. You would change these to define
+        // the regions needed for this year's game
+        this(new ColorProcessorConfig());
+    }
+
+    public ColorVisionProcessor(ColorProcessorConfig config) {
+
+        NumRegions = config.getNumRegions();
+        SquareSize = config.getSquareSize();
+
+        // these depend on the number of regions
+        synchronizedColorData = new SynchronizedColorData();
+        telemetryChannel = new TelemetryChannel();
+        scanOrders = new ScanOrder[NumRegions];
+        framePool = new SynchronizedFramePool(3);
 
-        // you would change these to define the regions needed
-        // for this year's game
-        RegionTopLeft[0] = new Point(109, 98);
-        RegionWidth[0] = 60;
-        RegionHeight[0] = 80;
+        setConfig(config);
+    }
 
-        RegionTopLeft[1] = new Point(181, 98);
-        RegionWidth[1] = 60;
-        RegionHeight[1] = 80;
+    // returns the config that will be used for the next frame
+    public ColorProcessorConfig getConfig()
+    {
+        return nextConfig.get();
+    }
 
-        RegionTopLeft[2] = new Point(253, 98);
-        RegionWidth[2] = 60;
-        RegionHeight[2] = 80;
+    // the config is used starting with the next frame. It must have the same number
+    // of regions and square size as the config passed to the constructor.
+    public void setConfig(ColorProcessorConfig config)
+    {
+        if (config.getNumRegions() != NumRegions)
+        {
+            throw new IllegalArgumentException("config has " + config.getNumRegions() + " regions, expected " + NumRegions);
+        }
+        if (config.getSquareSize() != SquareSize)
+        {
+            throw new IllegalArgumentException("config has square size " + config.getSquareSize() + ", expected " + SquareSize);
+        }
+        nextConfig.set(config);
     }
 
     // returns the region number that has the most area of the specified color.
     // Returns -1 if no region has the color.
     public int getRegion (Color_Enum color)
     {
-        int bestRegion = -1;
-        int maxSquares = 0;
-        int squareCount = 0;
-        Scalar colorScalar = getColorScalar (color);
+        return synchronizedColorData.getRanking().getBestRegion(color);
+    }
 
-        List<EnumMap<Color_Enum, ColorData>> colorData = getColorData();
+    // returns up to k region numbers that have the specified color, with the
+    // region that has the most area of the color first.
+    public int[] getTopRegions (Color_Enum color, int k)
+    {
+        return synchronizedColorData.getRanking().getTopRegions(color, k);
+    }
 
-        if (isCameraInitialized())
-        {
-            for (int region = 0; region < NumRegions; ++region) {
+    // returns how many more squares of the color the best region has than the
+    // second best region. Returns 0 if no region has the color.
+    public int getRegionMargin (Color_Enum color)
+    {
+        return synchronizedColorData.getRanking().getMargin(color);
+    }
 
-                if (colorData.get(region).get(color) != null)
-                {
-                   squareCount = colorData.get(region).get(color).squareCount;
-                }
+    // returns true if the region has the most area of the color, and has at least
+    // minMargin more squares of it than any other region.
+    public boolean isRegionDominant (Color_Enum color, int region, int minMargin)
+    {
+        RegionRanking ranking = synchronizedColorData.getRanking();
 
-                if (squareCount > maxSquares)
-                {
-                   bestRegion = region;
-                   maxSquares = squareCount;
-                }
-            }
+        return (ranking.getBestRegion(color) == region && ranking.getMargin(color) >= minMargin);
+    }
+
+    // Normally every square of every region is checked. If the opMode only needs one
+    // answer, a query lets the search stop as soon as that answer can't change.
+    // While a query is set, getColorData and the functions above only count the squares
+    // that were checked, so use getQueryResult for the answer.
+    //
+    // This asks for the region that has at least minMargin more squares of the color
+    // than any other region. getQueryResult returns that region, or -1 if there isn't one.
+    public void setDominantRegionQuery (Color_Enum color, int minMargin)
+    {
+        colorQuery = new ColorQuery(color, -1, Math.max(1, minMargin));
+    }
+
+    // This asks if the region has at least minSquares squares of the color.
+    // getQueryResult returns the region if it does, or -1 if it doesn't.
+    public void setRegionColorQuery (int region, Color_Enum color, int minSquares)
+    {
+        if (region < 0 || region >= NumRegions)
+        {
+            throw new IllegalArgumentException("region " + region + " is not between 0 and " + (NumRegions - 1));
         }
+        colorQuery = new ColorQuery(color, region, Math.max(1, minSquares));
+    }
+
+    // goes back to checking every square
+    public void clearQuery ()
+    {
+        colorQuery = null;
+    }
+
+    // returns the number of bright, saturated pixels of each hue (0-179) in the region,
+    // or null if UseHueHistogram is off
+    public int[] getHueHistogram (int region)
+    {
+        int[][] hueHistograms = synchronizedColorData.getResults().hueHistograms;
 
-        return bestRegion;
+        return (hueHistograms != null) ? hueHistograms[region].clone() : null;
+    }
+
+    // returns the answer to the query, or -1 if no query is set
+    public int getQueryResult ()
+    {
+        return synchronizedColorData.getResults().queryRegion;
+    }
+
+    // returns how many squares were checked in the last frame
+    public int getSquaresVisited ()
+    {
+        return synchronizedColorData.getResults().squaresVisited;
     }
 
     // this returns true when the VisionProcessor is running. It should be checked prior to
@@ -206,6 +309,78 @@ public class ColorVisionProcessor  implements VisionProcessor {
         return synchronizedColorData.getColorData();
     }
 
+    // when AsyncProcessing is on, these tell how well the worker thread is keeping up.
+    // A frame is dropped when a newer frame replaces it before the worker got to it.
+    public long getDroppedFrameCount()
+    {
+        return asyncStatistics.getDroppedFrames();
+    }
+
+    // time from when processFrame queued the frame until the worker started on it
+    public double getQueueLatencyMs()
+    {
+        return asyncStatistics.getLastLatencyNanos() / 1.0e6;
+    }
+
+    public double getAverageQueueLatencyMs()
+    {
+        return asyncStatistics.getAverageLatencyNanos() / 1.0e6;
+    }
+
+    // the number of frames the worker thread could not search because of an error,
+    // and the last error. The worker keeps going with the next frame.
+    public long getWorkerErrorCount()
+    {
+        return asyncStatistics.getErrors();
+    }
+
+    public RuntimeException getLastWorkerError()
+    {
+        return asyncStatistics.getLastError();
+    }
+
+    // saves each frame's results to the journal, for looking at after the match.
+    // Set to null to stop saving. See FrameJournal for an example.
+    // The journal must be made for the same number of regions as the processor.
+    public void setJournal(FrameJournal journal)
+    {
+        if (journal != null && journal.getNumRegions() != NumRegions)
+        {
+            throw new IllegalArgumentException("journal has " + journal.getNumRegions() + " regions, expected " + NumRegions);
+        }
+        frameJournal = journal;
+    }
+
+    // stops the worker thread used by AsyncProcessing and frees the memory used by its
+    // frame buffers. Call this when closing the VisionPortal. After this, frames are no
+    // longer searched while AsyncProcessing is on.
+    public synchronized void close()
+    {
+        closed = true;
+
+        if (workerThread != null)
+        {
+            workerThread.interrupt();
+
+            // wait for the worker to finish the frame it is on, so it is done with the buffers
+            try {
+                workerThread.join();
+            } catch (InterruptedException e) {
+                // leave the buffers alone, since the worker may still be using them
+                Thread.currentThread().interrupt();
+                return;
+            }
+            workerThread = null;
+        }
+
+        FrameBuffer waiting = frameSlot.clear();
+        if (waiting != null)
+        {
+            framePool.release(waiting);
+        }
+        framePool.releaseMats();
+    }
+
     // this is used to return telemetry data
     public class TelemetryData {
         public String caption;
@@ -230,7 +405,7 @@ public class ColorVisionProcessor  implements VisionProcessor {
         //      }
         //      telemetry.update();
 
-        return synchronizedTelemetryData.getList();
+        return telemetryChannel.getList();
     }
 
     // this class is used for drawing boxes on the screen
@@ -258,13 +433,130 @@ public class ColorVisionProcessor  implements VisionProcessor {
         }
     }
 
+    // this class ranks the regions by square count for each color. It is computed once
+    // per frame on the camera thread and not changed afterwards, so the opMode can
+    // read it without recomputing anything.
+    private class RegionRanking {
+        // for each color (by ordinal), the regions with that color, most squares first
+        private final int[][] rankedRegions = new int[Color_Enum.values().length][];
+        private final int[] margin = new int[Color_Enum.values().length];
+
+        // constructor for before the first frame
+        public RegionRanking ()
+        {
+            for (Color_Enum color : Color_Enum.values()) {
+                rankedRegions[color.ordinal()] = new int[0];
+            }
+        }
+
+        public RegionRanking (List<EnumMap<Color_Enum, ColorData>> colorData)
+        {
+            int numRegions = colorData.size();
+            int[] order = new int[numRegions];
+            int[] squares = new int[numRegions];
+
+            for (Color_Enum color : Color_Enum.values()) {
+                int count = 0;
+
+                // insertion sort, most squares first. Ties keep the lower region number
+                // first, which matches the original getRegion search.
+                for (int region = 0; region < numRegions; ++region) {
+                    int regionSquares = colorData.get(region).get(color).squareCount;
+
+                    if (regionSquares > 0) {
+                        int index = count;
+                        while (index > 0 && squares[index - 1] < regionSquares) {
+                            order[index] = order[index - 1];
+                            squares[index] = squares[index - 1];
+                            --index;
+                        }
+                        order[index] = region;
+                        squares[index] = regionSquares;
+                        ++count;
+                    }
+                }
+
+                rankedRegions[color.ordinal()] = Arrays.copyOf(order, count);
+
+                if (count == 1) {
+                    margin[color.ordinal()] = squares[0];
+                } else if (count > 1) {
+                    margin[color.ordinal()] = squares[0] - squares[1];
+                }
+            }
+        }
+
+        public int getBestRegion (Color_Enum color) {
+            int[] regions = rankedRegions[color.ordinal()];
+
+            return (regions.length > 0) ? regions[0] : -1;
+        }
+
+        public int[] getTopRegions (Color_Enum color, int k) {
+            int[] regions = rankedRegions[color.ordinal()];
+
+            return Arrays.copyOf(regions, Math.max(0, Math.min(k, regions.length)));
+        }
+
+        public int getMargin (Color_Enum color) {
+            return margin[color.ordinal()];
+        }
+    }
+
+    // this class describes a query set by the opMode. It is not changed after it is
+    // made, so the search can use it without it changing part way through a frame.
+    private class ColorQuery {
+        final Color_Enum color;
+        final int region;           // -1 to find the dominant region
+        final int minSquares;       // margin for the dominant region, or count for a single region
+
+        // constructor
+        public ColorQuery (Color_Enum color, int region, int minSquares)
+        {
+            this.color = color;
+            this.region = region;
+            this.minSquares = minSquares;
+        }
+    }
+
+    // this class holds what the search found in one frame
+    private class FrameResults {
+        List<EnumMap<Color_Enum, ColorData>> colorData = new ArrayList<EnumMap<Color_Enum, ColorData>>();
+        CompiledRegions regions;
+        Color_Enum[] regionColor = new Color_Enum[NumRegions];
+        int[][] hueHistograms = null;
+        int queryRegion = -1;
+        int squaresVisited = 0;
+        long sequence = 0;
+        long captureTimeNanos = 0;
+        long queueLatencyNanos = 0;
+        long convertTimeNanos = 0;
+        long searchTimeNanos = 0;
+        boolean asyncProcessing = false;
+        boolean queryUsed = false;
+    }
+
     // this class is used to pass color data from camera thread to opMode thread
     private class SynchronizedColorData {
         List<EnumMap<Color_Enum, ColorData>> colorData = new ArrayList<EnumMap<Color_Enum, ColorData>>();
+        RegionRanking ranking = new RegionRanking();
+        FrameResults results = new FrameResults();
 
-        public synchronized void setColorData (List<EnumMap<Color_Enum, ColorData>> colorData) {
+        public synchronized void setColorData (FrameResults results, RegionRanking ranking) {
             // copy the list without being interrupted
-            this.colorData = new ArrayList<EnumMap<Color_Enum, ColorData>>(colorData);
+            this.colorData = new ArrayList<EnumMap<Color_Enum, ColorData>>(results.colorData);
+            this.ranking = ranking;
+            this.results = results;
+        }
+
+        public synchronized FrameResults getResults () {
+            // get the results without being interrupted
+            return this.results;
+        }
+
+        public synchronized RegionRanking getRanking () {
+            // get the ranking without being interrupted
+            return this.ranking;
         }
 
         public synchronized List<EnumMap<Color_Enum, ColorData>> getColorData () {
@@ -273,21 +565,342 @@ public class ColorVisionProcessor  implements VisionProcessor {
         }
     }
 
-    // this class is used to pass telemetry data from camera thread to opMode thread
-    private class SynchronizedTelemetryList {
+    // this class is used to pass telemetry data from camera thread to opMode thread.
+    // The captions are made once, and the values are kept as numbers that are overwritten
+    // in place, so nothing new is created each frame. The list of TelemetryData is only
+    // built when the opMode asks for it, and only if a value has changed.
+    private class TelemetryChannel {
+        // slot numbers for the values after the region colors
+        final int RedRegionSlot = NumRegions;
+        final int BlueRegionSlot = NumRegions + 1;
+        final int SearchTimeSlot = NumRegions + 2;
+        final int DroppedFramesSlot = NumRegions + 3;
+        final int QueueLatencySlot = NumRegions + 4;
+        final int SquaresVisitedSlot = NumRegions + 5;
+        final int QueryRegionSlot = NumRegions + 6;
+        final int WorkerErrorsSlot = NumRegions + 7;
+        final int NumSlots = NumRegions + 8;
+
+        private final Color_Enum[] colors = Color_Enum.values();
+        private final String[] captions = new String[NumSlots];
+
+        // written only while holding searchLock, by the camera thread or
+        // (with AsyncProcessing) the worker thread
+        private final double[] pendingValues = new double[NumSlots];
+        private final boolean[] pendingShown = new boolean[NumSlots];
+        private long lastPublishNanos = 0;
+        private boolean published = false;
+
+        // shared with the opMode thread
+        private final double[] values = new double[NumSlots];
+        private final boolean[] shown = new boolean[NumSlots];
+        private long version = 0;
+        private long listVersion = -1;
         private List<TelemetryData> list = new ArrayList<TelemetryData>();
-    
-        public synchronized void setList (List<TelemetryData> list) {
-            // copy the list without being interrupted
-            this.list = new ArrayList<TelemetryData>(list);
+
+        // constructor
+        public TelemetryChannel ()
+        {
+            for (int region = 0; region < NumRegions; ++region) {
+                captions[region] = "Region " + region + " Color";
+            }
+            captions[RedRegionSlot] = "Red region";
+            captions[BlueRegionSlot] = "Blue region";
+            captions[SearchTimeSlot] = "Search time (ms)";
+            captions[DroppedFramesSlot] = "Dropped frames";
+            captions[QueueLatencySlot] = "Queue latency (ms)";
+            captions[SquaresVisitedSlot] = "Squares visited";
+            captions[QueryRegionSlot] = "Query region";
+            captions[WorkerErrorsSlot] = "Worker errors";
+        }
+
+        // returns true if it is time to update the telemetry values again.
+        // Called once per frame, so TelemetryIntervalMs is only read once.
+        public boolean isPublishDue (long nowNanos) {
+            return (!published || nowNanos - lastPublishNanos >= TelemetryIntervalMs * 1000000L);
+        }
+
+        public void set (int slot, double value) {
+            pendingValues[slot] = value;
+            pendingShown[slot] = true;
+        }
+
+        public void hide (int slot) {
+            pendingShown[slot] = false;
+        }
+
+        // makes the values set since the last publish visible to the opMode all at once
+        public synchronized void publish (long nowNanos) {
+            boolean changed = false;
+
+            for (int slot = 0; slot < NumSlots; ++slot) {
+                if (values[slot] != pendingValues[slot] || shown[slot] != pendingShown[slot]) {
+                    values[slot] = pendingValues[slot];
+                    shown[slot] = pendingShown[slot];
+                    changed = true;
+                }
+            }
+
+            if (changed) {
+                version++;
+            }
+            lastPublishNanos = nowNanos;
+            published = true;
         }
 
         public synchronized List<TelemetryData> getList () {
+            // only build a new list if something changed since the last one
+            if (listVersion != version) {
+                List<TelemetryData> newList = new ArrayList<TelemetryData>();
+
+                for (int slot = 0; slot < NumSlots; ++slot) {
+                    if (shown[slot]) {
+                        newList.add(new TelemetryData(captions[slot], getObject(slot)));
+                    }
+                }
+                list = newList;
+                listVersion = version;
+            }
+            return list;
+        }
+
+        private Object getObject (int slot) {
+            if (slot < NumRegions) {
+                return colors[(int) values[slot]];
+            } else if (slot == SearchTimeSlot || slot == QueueLatencySlot) {
+                return values[slot];
+            } else {
+                return (long) values[slot];
+            }
+        }
+    }
+
+    // this class is used to pass the debug squares from the search to the drawing code
+    private class SynchronizedDebugList {
+        private List<DebugData> list = new ArrayList<DebugData>();
+
+        public synchronized void setList (List<DebugData> list) {
+            // copy the list without being interrupted
+            this.list = new ArrayList<DebugData>(list);
+        }
+
+        public synchronized List<DebugData> getList () {
             // get the list without being interrupted
             return this.list;
         }
     }
 
+    // this class holds a copy of the region pixels passed from the camera thread to the worker thread.
+    // The Mats are reused from frame to frame, so no new memory is needed once they are sized.
+    private class FrameBuffer {
+        Mat[] rgbMats = new Mat[NumRegions];
+        Mat[] hsvMats = new Mat[NumRegions];
+        CompiledRegions regions;
+        long sequence;
+        long captureTimeNanos;
+        long queuedTimeNanos;
+
+        // constructor
+        public FrameBuffer ()
+        {
+            for (int region = 0; region < NumRegions; ++region) {
+                rgbMats[region] = new Mat();
+                hsvMats[region] = new Mat();
+            }
+        }
+
+        // frees the OpenCV memory. The buffer can't be used after this.
+        public void release ()
+        {
+            for (int region = 0; region < NumRegions; ++region) {
+                rgbMats[region].release();
+                hsvMats[region].release();
+            }
+        }
+    }
+
+    // this class holds the buffers that are not in use. Three buffers are enough, since at most
+    // one is being filled, one is waiting in the slot, and one is being searched by the worker.
+    private class SynchronizedFramePool {
+        private final ArrayDeque<FrameBuffer> freeBuffers = new ArrayDeque<FrameBuffer>();
+
+        // constructor
+        public SynchronizedFramePool (int size)
+        {
+            for (int count = 0; count < size; ++count) {
+                freeBuffers.push(new FrameBuffer());
+            }
+        }
+
+        public synchronized FrameBuffer get () {
+            FrameBuffer buffer = freeBuffers.poll();
+
+            // only happens if the worker is holding more than expected
+            if (buffer == null) {
+                buffer = new FrameBuffer();
+            }
+            return buffer;
+        }
+
+        public synchronized void release (FrameBuffer buffer) {
+            freeBuffers.push(buffer);
+        }
+
+        // frees the OpenCV memory of every buffer in the pool. Called by close once
+        // the worker thread has stopped and all of the buffers are back.
+        public synchronized void releaseMats () {
+            for (FrameBuffer buffer : freeBuffers) {
+                buffer.release();
+            }
+            freeBuffers.clear();
+        }
+    }
+
+    // this class holds the one frame waiting for the worker thread. If a new frame arrives before
+    // the worker takes the old one, the old one is replaced (latest wins) and returned as dropped.
+    private class SynchronizedFrameSlot {
+        private FrameBuffer buffer = null;
+
+        public synchronized FrameBuffer put (FrameBuffer buffer) {
+            FrameBuffer dropped = this.buffer;
+
+            this.buffer = buffer;
+            notifyAll();
+            return dropped;
+        }
+
+        public synchronized FrameBuffer take () throws InterruptedException {
+            while (this.buffer == null) {
+                wait();
+            }
+            FrameBuffer taken = this.buffer;
+            this.buffer = null;
+            return taken;
+        }
+
+        // removes the waiting frame without waiting, or returns null if there isn't one
+        public synchronized FrameBuffer clear () {
+            FrameBuffer taken = this.buffer;
+            this.buffer = null;
+            return taken;
+        }
+    }
+
+    // this class keeps the dropped frame and latency counts for AsyncProcessing
+    private class AsyncStatistics {
+        private long droppedFrames = 0;
+        private long processedFrames = 0;
+        private long lastLatencyNanos = 0;
+        private long totalLatencyNanos = 0;
+        private long errors = 0;
+        private RuntimeException lastError = null;
+
+        public synchronized void addDroppedFrame () {
+            droppedFrames++;
+        }
+
+        public synchronized void addError (RuntimeException error) {
+            errors++;
+            lastError = error;
+        }
+
+        public synchronized long getErrors () {
+            return errors;
+        }
+
+        public synchronized RuntimeException getLastError () {
+            return lastError;
+        }
+
+        public synchronized void addLatency (long latencyNanos) {
+            processedFrames++;
+            lastLatencyNanos = latencyNanos;
+            totalLatencyNanos += latencyNanos;
+        }
+
+        public synchronized long getDroppedFrames () {
+            return droppedFrames;
+        }
+
+        public synchronized long getLastLatencyNanos () {
+            return lastLatencyNanos;
+        }
+
+        public synchronized long getAverageLatencyNanos () {
+            if (processedFrames == 0) {
+                return 0;
+            }
+            return totalLatencyNanos / processedFrames;
+        }
+    }
+
+    // this is the worker thread for AsyncProcessing. It waits for a frame, searches
+    // each region and publishes the results the same way processFrame does.
+    private class ColorWorker implements Runnable {
+        private final List<DebugData> workerDebugList = new ArrayList<DebugData>();
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                FrameBuffer buffer;
+
+                try {
+                    buffer = frameSlot.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+
+                try {
+                    searchFrame(buffer);
+                } catch (RuntimeException e) {
+                    // keep the worker running, so one bad frame doesn't stop the search for good
+                    asyncStatistics.addError(e);
+                } finally {
+                    framePool.release(buffer);
+                }
+            }
+        }
+
+        private void searchFrame(FrameBuffer buffer) {
+            FrameResults results = new FrameResults();
+            workerDebugList.clear();
+
+            long convertStartNanos = System.nanoTime();
+
+            results.sequence = buffer.sequence;
+            results.captureTimeNanos = buffer.captureTimeNanos;
+            results.asyncProcessing = true;
+            results.queueLatencyNanos = convertStartNanos - buffer.queuedTimeNanos;
+            asyncStatistics.addLatency(results.queueLatencyNanos);
+
+            // the search uses the thresholds from the config the frame was copied with
+            results.regions = buffer.regions;
+
+            synchronized (searchLock)
+            {
+                // if AsyncProcessing was turned off, processFrame may have already published
+                // a newer frame. Don't let this older one replace it.
+                if (buffer.sequence < nextPublishSequence)
+                {
+                    asyncStatistics.addDroppedFrame();
+                    return;
+                }
+
+                for (int region = 0; region < NumRegions; ++region) {
+                    Imgproc.cvtColor(buffer.rgbMats[region], buffer.hsvMats[region], Imgproc.COLOR_RGB2HSV);
+                }
+
+                long searchStartNanos = System.nanoTime();
+                results.convertTimeNanos = searchStartNanos - convertStartNanos;
+
+                searchRegions(buffer.hsvMats, workerDebugList, results);
+
+                results.searchTimeNanos = System.nanoTime() - searchStartNanos;
+                publishResults(results, workerDebugList);
+            }
+        }
+    }
+
     private Scalar getColorScalar (Color_Enum color)
     {
         Scalar colorScalar = new Scalar(0, 0, 0);
@@ -343,13 +956,46 @@ public class ColorVisionProcessor  implements VisionProcessor {
 
     // Working variables
 
-    List<EnumMap<Color_Enum, ColorData>> region_colorData = new ArrayList<EnumMap<Color_Enum, ColorData>>();
-    private SynchronizedColorData synchronizedColorData = new SynchronizedColorData();
+    private final SynchronizedColorData synchronizedColorData;
 
     List<DebugData> debugList = new ArrayList<DebugData>();
+    private SynchronizedDebugList synchronizedDebugList = new SynchronizedDebugList();
+
+    private final TelemetryChannel telemetryChannel;
+
+    // set by the opMode, and picked up at the start of the next frame
+    private final AtomicReference<ColorProcessorConfig> nextConfig = new AtomicReference<ColorProcessorConfig>();
+
+    // the region rectangles for the config being used, rebuilt only when the config changes
+    private CompiledRegions compiledRegions = null;
 
-    private List<TelemetryData> telemetryData = new ArrayList<TelemetryData>();
-    private SynchronizedTelemetryList synchronizedTelemetryData = new SynchronizedTelemetryList();
+    // set by the opMode to save results after the match
+    private volatile FrameJournal frameJournal = null;
+
+    // set by the opMode to let the search stop early
+    private volatile ColorQuery colorQuery = null;
+
+    // center-out square order for each region, used by queries. Guarded by searchLock.
+    private final ScanOrder[] scanOrders;
+
+    // used only when AsyncProcessing is on
+    private final SynchronizedFramePool framePool;
+    private SynchronizedFrameSlot frameSlot = new SynchronizedFrameSlot();
+    private AsyncStatistics asyncStatistics = new AsyncStatistics();
+    private Thread workerThread = null;
+    private boolean closed = false;
+
+    // the number given to the next frame. Only used by the camera thread.
+    private long frameSequence = 0;
+
+    // held while a frame is searched and published. Normally only one thread does this, but
+    // for a frame or two after AsyncProcessing is turned off, both the camera thread and the
+    // worker can have a frame. This lock keeps them from using scanOrders, the telemetry
+    // values and the journal at the same time.
+    private final Object searchLock = new Object();
+
+    // frames numbered below this are older than the last results published. Guarded by searchLock.
+    private long nextPublishSequence = 0;
 
     /*
      * This function takes the RGB frame and converts to HSV
@@ -365,9 +1011,10 @@ public class ColorVisionProcessor  implements VisionProcessor {
 
     //
     // finds the average hue and saturation of the input, and maps it to a color
-    // with an associated score. Location is not set.
+    // with an associated score. Location is not set. The thresholds come from config,
+    // which is the config for the frame being searched.
     //
-    ColorData computeColorData(Mat input)
+    ColorData computeColorData(Mat input, ColorProcessorConfig config)
     {
         // input is the pixels for a 5x5 square from the camera in HSV (Hue/Saturation/Value) format
     
@@ -393,7 +1040,7 @@ public class ColorVisionProcessor  implements VisionProcessor {
         //     Core.mean returns the mean (average) value of channel 2, which is value/brightness
         int average_brightness = (int) Core.mean(input).val[2];
         
-        if (average_brightness < MinBrightness)
+        if (average_brightness < config.getMinBrightness())
         {
             done = true;
         }
@@ -405,7 +1052,7 @@ public class ColorVisionProcessor  implements VisionProcessor {
             //     Core.mean returns the mean (average) value of channel 1, which is saturation
             average_sat = (int) Core.mean(input).val[1];
 
-            if (average_sat < MinSaturation)
+            if (average_sat < config.getMinSaturation())
             {
                 done = true;
             }
@@ -425,7 +1072,7 @@ public class ColorVisionProcessor  implements VisionProcessor {
 
             // if standard deviation is too high, that means it is not a solid
             // color and has too many different colors in it
-            if (stdDev_hue >= MaxStdDev)
+            if (stdDev_hue >= config.getMaxStdDev())
             {
                 done = true;
             }
@@ -486,7 +1133,7 @@ public class ColorVisionProcessor  implements VisionProcessor {
                 // channel 1 is saturation
                 int average_sat_red = (int) Core.mean(redHSV).val[1];
 
-                if (average_hue_red > 170 && average_hue_red < 190 && average_sat_red > MinSaturation && stdDev_hue_red <= MaxStdDev)
+                if (average_hue_red > 170 && average_hue_red < 190 && average_sat_red > config.getMinSaturation() && stdDev_hue_red <= config.getMaxStdDev())
                 {
                     colorData.color = Color_Enum.Color_Red;
                     deltaHue = 180 - average_hue_red;
@@ -506,91 +1153,590 @@ public class ColorVisionProcessor  implements VisionProcessor {
     }
 
     //
-    // This function fills a list with the information on each color
-    // seen in the specified region.
+    // This is the same as computeColorData above, but works on the HSV bytes of the
+    // region that were copied out of the Mat. offset is the index of the square's top
+    // left pixel and rowStride is the number of bytes in a row of the region.
+    //
+    // The averages and standard deviations are computed the same way OpenCV does, so
+    // any change to the checks in computeColorData must also be made here.
     //
-    EnumMap<Color_Enum, ColorData> searchForColors(Mat input, int region) {
+    ColorData computeColorData(byte[] pixels, int offset, int rowStride, ColorProcessorConfig config)
+    {
+        ColorData colorData = new ColorData();
 
-        EnumMap<Color_Enum, ColorData> bestColorDataList = new EnumMap<>(Color_Enum.class);
-        ColorData workingColorData;
-        DebugData bestDebug;
-        Mat regionMat;
-            
-        // clear the color data
-        for (Color_Enum colorLoop : Color_Enum.values())
-        {
-            bestColorDataList.put(colorLoop, new ColorData());
-            bestColorDataList.get(colorLoop).squareCount = 0;
-        }
+        int deltaHue = 999;
+        int deltaSat = 999;
+        boolean done = false;
+        int average_hue = 0;
+        int average_sat = 0;
+        int stdDev_hue = 0;
+
+        // add up each channel in one pass. The red sums are for the hue moved to
+        // 90-270 (see below), which is done by adding 180 to hues 0-89. Like the
+        // OpenCV add on a byte Mat, the result is limited to 255.
+        int sumHue = 0;
+        int sumHueSquared = 0;
+        int sumSat = 0;
+        int sumBrightness = 0;
+        int sumHueRed = 0;
+        int sumHueRedSquared = 0;
+
+        for (int row = 0; row < SquareSize; ++row)
+        {
+            int index = offset + row * rowStride;
+
+            for (int column = 0; column < SquareSize; ++column)
+            {
+                int hue = pixels[index] & 0xFF;
+                int hueRed = (hue <= 89) ? Math.min(hue + 180, 255) : hue;
+
+                sumHue += hue;
+                sumHueSquared += hue * hue;
+                sumSat += pixels[index + 1] & 0xFF;
+                sumBrightness += pixels[index + 2] & 0xFF;
+                sumHueRed += hueRed;
+                sumHueRedSquared += hueRed * hueRed;
+
+                index += 3;
+            }
+        }
+
+        // OpenCV multiplies by the scale rather than dividing, so do the same
+        // to get the same rounding
+        double scale = 1.0 / (SquareSize * SquareSize);
+
+        // clear the color data
+        colorData.color = Color_Enum.Color_None;
+        colorData.score = 0.0;
+
+        int average_brightness = (int) (sumBrightness * scale);
+
+        if (average_brightness < config.getMinBrightness())
+        {
+            done = true;
+        }
+
+        if (!done)
+        {
+            average_sat = (int) (sumSat * scale);
+
+            if (average_sat < config.getMinSaturation())
+            {
+                done = true;
+            }
+        }
+
+        if (!done)
+        {
+            double mean = sumHue * scale;
+
+            average_hue = (int) mean;
+            stdDev_hue = (int) Math.sqrt(Math.max(sumHueSquared * scale - mean * mean, 0));
+
+            if (stdDev_hue >= config.getMaxStdDev())
+            {
+                done = true;
+            }
+
+            if (average_hue > 170 || average_hue < 10)
+            {
+                done = false;
+            }
+        }
+
+        if (!done)
+        {
+            if (average_hue > 90 && average_hue < 120)
+            {
+                colorData.color = Color_Enum.Color_Blue;
+                deltaHue = 105 - average_hue;
+                deltaSat = 150 - average_sat;
+            }
+            else if (average_hue > 45 && average_hue < 85)
+            {
+                colorData.color = Color_Enum.Color_Green;
+                deltaHue = 75 - average_hue;
+                deltaSat = 150 - average_sat;
+            }
+            else if (average_hue > 20 && average_hue < 40)
+            {
+                colorData.color = Color_Enum.Color_Yellow;
+                deltaHue = 30 - average_hue;
+                deltaSat = 150 - average_sat;
+            }
+            else
+            {
+                double meanRed = sumHueRed * scale;
+
+                int average_hue_red = (int) meanRed;
+                int stdDev_hue_red = (int) Math.sqrt(Math.max(sumHueRedSquared * scale - meanRed * meanRed, 0));
+
+                // saturation is not changed by the red adjustment
+                int average_sat_red = average_sat;
+
+                if (average_hue_red > 170 && average_hue_red < 190 && average_sat_red > config.getMinSaturation() && stdDev_hue_red <= config.getMaxStdDev())
+                {
+                    colorData.color = Color_Enum.Color_Red;
+                    deltaHue = 180 - average_hue_red;
+                    deltaSat = 150 - average_sat_red;
+                }
+            }
+
+            // compute score
+            if (deltaSat < 0) {
+                deltaSat = 0;
+            }
+
+            colorData.score = 100 - Math.sqrt(deltaHue * deltaHue + deltaSat * deltaSat);
+        }
+
+        return colorData;
+    }
+
+    //
+    // This function fills a list with the information on each color
+    // seen in the region. regionMat holds only the region's pixels in HSV,
+    // and regionTopLeft is where the region is on the screen.
+    //
+    EnumMap<Color_Enum, ColorData> searchForColors(Mat regionMat, Point regionTopLeft, List<DebugData> debugList, ColorProcessorConfig config, boolean usePixelKernel) {
+
+        EnumMap<Color_Enum, ColorData> bestColorDataList = newColorDataList();
+        ColorData workingColorData;
+
+        byte[] pixels = getRegionPixels(regionMat, usePixelKernel);
+
+        //
+        // split the region into 5x5 pixel squares and get the color in each square
+        //
+
+        // search in squares for highest scoring one
+        for (int row = 0; row < regionMat.rows() - SquareSize; row += SquareSize)
+        {
+            for (int column = 0; column < regionMat.cols() - SquareSize; column += SquareSize)
+            {
+                workingColorData = classifySquare(regionMat, pixels, row, column, config);
+
+                addSquare(bestColorDataList, workingColorData,
+                          column + (int)regionTopLeft.x, row + (int)regionTopLeft.y, debugList);
+            }
+        }
+            
+        return bestColorDataList;
+    }
+
+    // returns a color list with no squares found
+    EnumMap<Color_Enum, ColorData> newColorDataList()
+    {
+        EnumMap<Color_Enum, ColorData> colorDataList = new EnumMap<>(Color_Enum.class);
+
+        // clear the color data
+        for (Color_Enum colorLoop : Color_Enum.values())
+        {
+            colorDataList.put(colorLoop, new ColorData());
+            colorDataList.get(colorLoop).squareCount = 0;
+        }
+
+        return colorDataList;
+    }
+
+    // for the pixel kernel, copy the whole region out of OpenCV once.
+    // Returns null if the pixel kernel is not used.
+    byte[] getRegionPixels(Mat regionMat, boolean usePixelKernel)
+    {
+        byte[] pixels = null;
+
+        if (usePixelKernel)
+        {
+            pixels = new byte[regionMat.rows() * regionMat.cols() * 3];
+            regionMat.get(0, 0, pixels);
+        }
+
+        return pixels;
+    }
+
+    // returns the color of the square with its top left corner at row, column of the region
+    ColorData classifySquare(Mat regionMat, byte[] pixels, int row, int column, ColorProcessorConfig config)
+    {
+        if (pixels != null)
+        {
+            int rowStride = regionMat.cols() * 3;
+
+            return computeColorData(pixels, row * rowStride + column * 3, rowStride, config);
+        }
+        else
+        {
+            Mat square = regionMat.submat(row, row + SquareSize, column, column + SquareSize);
+
+            return computeColorData(square, config);
+        }
+    }
+
+    // adds a square at screen location x, y to the color list for its region
+    void addSquare(EnumMap<Color_Enum, ColorData> bestColorDataList, ColorData workingColorData, int x, int y, List<DebugData> debugList)
+    {
+        Point upperLeft = new Point(x, y);
+        Point lowerRight = new Point(x + SquareSize, y + SquareSize);
+
+        // this code saves data to draw a square around the 5x5 grid with the line color
+        // set to the color found in the grid (if any). The line width is small if it's
+        // not a great score, and large if it's a good score.
+        // The squares can be seen if using Camera Stream on the driver station or
+        // have a monitor connected to the HDMI port on the control hub.
+        int width = 1;
+        if (workingColorData.score >= 98)
+        {
+            width = 2;
+        }
+
+        Color_Enum color = workingColorData.color;
 
-        if (region < NumRegions)
+        if (workingColorData.color != Color_Enum.Color_None)
         {
-            Point regionTopLeft = new Point(
-                RegionTopLeft[region].x,
-                RegionTopLeft[region].y);
-            Point regionBottomRight = new Point(
-                RegionTopLeft[region].x + RegionWidth[region],
-                RegionTopLeft[region].y + RegionHeight[region]);
+            // increment the square count for use when determining
+            // region with the most of a given color.
+            bestColorDataList.get(color).squareCount++;
 
-            regionMat = input.submat(new Rect(regionTopLeft, regionBottomRight));
+            // the square drawing data is saved off in a list and drawn later                  
+            DebugData data = new DebugData(color, upperLeft, lowerRight, width);
+            debugList.add(data);
+
+            if (workingColorData.score > bestColorDataList.get(color).score)
+            {
+                bestColorDataList.get(color).color = workingColorData.color;
+                bestColorDataList.get(color).score = workingColorData.score;
+                bestColorDataList.get(color).x_location = x;
+                bestColorDataList.get(color).y_location = y;
+            }
+        }
+    }
 
-            //
-            // split the region into 5x5 pixel squares and get the color in each square
-            //
+    // returns the number of squares searchForColors checks in a region
+    int getSquareCount(int rows, int columns)
+    {
+        return Math.max(0, (rows - 1) / SquareSize) * Math.max(0, (columns - 1) / SquareSize);
+    }
 
-            // search in squares for highest scoring one
-            for (int row = 0; row < regionMat.rows() - SquareSize; row += SquareSize)
+    //
+    // This function searches all of the regions and fills in results.
+    // regionMats holds the HSV pixels of each region.
+    //
+    void searchRegions(Mat[] regionMats, List<DebugData> debugList, FrameResults results)
+    {
+        // only read the settings once, in case the opMode changes them during the frame
+        ColorQuery query = colorQuery;
+        boolean useHueHistogram = UseHueHistogram;
+        boolean usePixelKernel = UsePixelKernel;
+
+        results.queryUsed = (query != null);
+
+        if (query == null && useHueHistogram)
+        {
+            results.hueHistograms = new int[NumRegions][MaxHue];
+
+            for (int region = 0; region < NumRegions; ++region) {
+
+                // compute and save color data
+                results.colorData.add(searchWithHistogram(regionMats[region], results.regions.topLeft[region], debugList, results.hueHistograms[region], results.regions.config));
+                results.squaresVisited += getSquareCount(regionMats[region].rows(), regionMats[region].cols());
+            }
+        }
+        else if (query == null)
+        {
+            for (int region = 0; region < NumRegions; ++region) {
+
+                // compute and save color data
+                results.colorData.add(searchForColors(regionMats[region], results.regions.topLeft[region], debugList, results.regions.config, usePixelKernel));
+                results.squaresVisited += getSquareCount(regionMats[region].rows(), regionMats[region].cols());
+            }
+        }
+        else
+        {
+            searchWithQuery(query, regionMats, debugList, results, usePixelKernel);
+        }
+    }
+
+    // hue in OpenCV goes from 0 to 179
+    final int MaxHue = 180;
+
+    // the color for each hue, using the same hue ranges as computeColorData
+    private final Color_Enum[] hueColors = makeHueColors();
+
+    private Color_Enum[] makeHueColors()
+    {
+        Color_Enum[] colors = new Color_Enum[MaxHue];
+
+        for (int hue = 0; hue < MaxHue; ++hue) {
+            if (hue > 90 && hue < 120) {
+                colors[hue] = Color_Enum.Color_Blue;
+            } else if (hue > 45 && hue < 85) {
+                colors[hue] = Color_Enum.Color_Green;
+            } else if (hue > 20 && hue < 40) {
+                colors[hue] = Color_Enum.Color_Yellow;
+            } else if (hue > 170 || hue < 10) {
+                // red crosses 0/180
+                colors[hue] = Color_Enum.Color_Red;
+            } else {
+                colors[hue] = Color_Enum.Color_None;
+            }
+        }
+
+        return colors;
+    }
+
+    //
+    // This function is used instead of searchForColors when UseHueHistogram is on.
+    // In a single pass over the region's pixels, it fills in hueHistogram with the hues
+    // of the pixels that are bright and saturated enough, and counts how many of those
+    // pixels in each square have each color. The squares are then scored from the counts.
+    //
+    EnumMap<Color_Enum, ColorData> searchWithHistogram(Mat regionMat, Point regionTopLeft, List<DebugData> debugList, int[] hueHistogram, ColorProcessorConfig config)
+    {
+        EnumMap<Color_Enum, ColorData> bestColorDataList = newColorDataList();
+        int numColors = Color_Enum.values().length;
+        int minSaturation = config.getMinSaturation();
+        int minBrightness = config.getMinBrightness();
+
+        int rows = regionMat.rows();
+        int columns = regionMat.cols();
+        byte[] pixels = new byte[rows * columns * 3];
+        regionMat.get(0, 0, pixels);
+
+        // use the same squares as searchForColors
+        int squareRows = Math.max(0, (rows - 1) / SquareSize);
+        int squareColumns = Math.max(0, (columns - 1) / SquareSize);
+        int[] squareCounts = new int[squareRows * squareColumns * numColors];
+
+        int index = 0;
+        for (int row = 0; row < rows; ++row)
+        {
+            int squareRow = row / SquareSize;
+
+            for (int column = 0; column < columns; ++column)
             {
-                for (int column = 0; column < regionMat.cols() - SquareSize; column += SquareSize)
+                int hue = pixels[index] & 0xFF;
+                int saturation = pixels[index + 1] & 0xFF;
+                int brightness = pixels[index + 2] & 0xFF;
+                index += 3;
+
+                if (saturation >= minSaturation && brightness >= minBrightness && hue < MaxHue)
                 {
-                    Mat square = regionMat.submat(row, row + SquareSize, column, column + SquareSize);
-
-                    int row2 = row + (int)RegionTopLeft[region].y;
-                    int col2 = column + (int)RegionTopLeft[region].x;
-                    Point upperLeft = new Point(col2, row2);
-                    Point lowerRight = new Point(col2 + SquareSize, row2 + SquareSize);
-
-                    workingColorData = computeColorData(square);
-
-                    // this code saves data to draw a square around the 5x5 grid with the line color
-                    // set to the color found in the grid (if any). The line width is small if it's
-                    // not a great score, and large if it's a good score.
-                    // The squares can be seen if using Camera Stream on the driver station or
-                    // have a monitor connected to the HDMI port on the control hub.
-                    int width = 1;
-                    if (workingColorData.score >= 98)
+                    hueHistogram[hue]++;
+
+                    int squareColumn = column / SquareSize;
+                    if (squareRow < squareRows && squareColumn < squareColumns)
                     {
-                        width = 2;
+                        squareCounts[(squareRow * squareColumns + squareColumn) * numColors + hueColors[hue].ordinal()]++;
                     }
+                }
+            }
+        }
+
+        int pixelsPerSquare = SquareSize * SquareSize;
+
+        for (int squareRow = 0; squareRow < squareRows; ++squareRow)
+        {
+            for (int squareColumn = 0; squareColumn < squareColumns; ++squareColumn)
+            {
+                int first = (squareRow * squareColumns + squareColumn) * numColors;
+                ColorData workingColorData = new ColorData();
 
-                    Color_Enum color = workingColorData.color;
+                // the square has the color that covers more than half of it
+                for (Color_Enum color : Color_Enum.values())
+                {
+                    int count = squareCounts[first + color.ordinal()];
 
-                    if (workingColorData.color != Color_Enum.Color_None)
+                    if (color != Color_Enum.Color_None && count * 2 > pixelsPerSquare)
                     {
-                        // increment the square count for use when determining
-                        // region with the most of a given color.
-                        bestColorDataList.get(color).squareCount++;
-
-                        // the square drawing data is saved off in a list and drawn later                  
-                        DebugData data = new DebugData(color, upperLeft, lowerRight, width);
-                        debugList.add(data);
-
-                        if (workingColorData.score > bestColorDataList.get(color).score)
-                        {
-                            bestColorDataList.get(color).color = workingColorData.color;
-                            bestColorDataList.get(color).score = workingColorData.score;
-                            bestColorDataList.get(color).x_location = col2;
-                            bestColorDataList.get(color).y_location = row2;
-                            bestDebug = data;
-                        }
+                        workingColorData.color = color;
+                        workingColorData.score = 100.0 * count / pixelsPerSquare;
                     }
                 }
+
+                addSquare(bestColorDataList, workingColorData,
+                          squareColumn * SquareSize + (int)regionTopLeft.x, squareRow * SquareSize + (int)regionTopLeft.y, debugList);
             }
         }
-            
+
         return bestColorDataList;
     }
 
+    //
+    // This function searches only until the answer to the query is known.
+    // The squares in each region are checked from the center out, and the regions take
+    // turns one square at a time, so a clear answer shows up after only a few squares.
+    //
+    void searchWithQuery(ColorQuery query, Mat[] regionMats, List<DebugData> debugList, FrameResults results, boolean usePixelKernel)
+    {
+        byte[][] pixels = new byte[NumRegions][];
+        int[][] scanOrders = new int[NumRegions][];
+        int[] counts = new int[NumRegions];
+        int[] remaining = new int[NumRegions];
+        int answer = QueryUndecided;
+
+        for (int region = 0; region < NumRegions; ++region) {
+            results.colorData.add(newColorDataList());
+
+            // a single region query doesn't need to look at the other regions
+            if (query.region < 0 || query.region == region)
+            {
+                pixels[region] = getRegionPixels(regionMats[region], usePixelKernel);
+                scanOrders[region] = getScanOrder(region, regionMats[region].rows(), regionMats[region].cols());
+                remaining[region] = scanOrders[region].length;
+            }
+        }
+
+        while (answer == QueryUndecided)
+        {
+            for (int region = 0; region < NumRegions; ++region) {
+                if (remaining[region] > 0)
+                {
+                    int square = scanOrders[region][scanOrders[region].length - remaining[region]];
+                    int row = square >> 16;
+                    int column = square & 0xFFFF;
+
+                    ColorData workingColorData = classifySquare(regionMats[region], pixels[region], row, column, results.regions.config);
+
+                    addSquare(results.colorData.get(region), workingColorData,
+                              column + (int)results.regions.topLeft[region].x, row + (int)results.regions.topLeft[region].y, debugList);
+
+                    remaining[region]--;
+                    results.squaresVisited++;
+                    counts[region] = results.colorData.get(region).get(query.color).squareCount;
+                }
+            }
+
+            // once every square is checked, this always gives an answer
+            answer = checkQuery(query, counts, remaining);
+        }
+
+        results.queryRegion = answer;
+    }
+
+    // returned by checkQuery when more squares need to be checked
+    final int QueryUndecided = -2;
+
+    //
+    // Returns the answer to the query if it can't change no matter what color the
+    // remaining squares are, or QueryUndecided if it still could.
+    //
+    int checkQuery(ColorQuery query, int[] counts, int[] remaining)
+    {
+        if (query.region >= 0)
+        {
+            int region = query.region;
+
+            if (counts[region] >= query.minSquares)
+            {
+                return region;
+            }
+            if (counts[region] + remaining[region] < query.minSquares)
+            {
+                return -1;
+            }
+            return QueryUndecided;
+        }
+
+        // find the region with the most squares so far (lowest region number on a tie)
+        int leader = 0;
+        for (int region = 1; region < NumRegions; ++region) {
+            if (counts[region] > counts[leader])
+            {
+                leader = region;
+            }
+        }
+
+        // the leader has won if no other region can catch up to within the margin
+        int maxOther = 0;
+        for (int region = 0; region < NumRegions; ++region) {
+            if (region != leader)
+            {
+                maxOther = Math.max(maxOther, counts[region] + remaining[region]);
+            }
+        }
+        if (counts[leader] - maxOther >= query.minSquares)
+        {
+            return leader;
+        }
+
+        // there is no answer if no region can still get far enough ahead of the others
+        for (int region = 0; region < NumRegions; ++region) {
+            int mostOthers = 0;
+            for (int other = 0; other < NumRegions; ++other) {
+                if (other != region)
+                {
+                    mostOthers = Math.max(mostOthers, counts[other]);
+                }
+            }
+            if (counts[region] + remaining[region] - mostOthers >= query.minSquares)
+            {
+                return QueryUndecided;
+            }
+        }
+        return -1;
+    }
+
+    //
+    // Returns the squares of the region in center-out order. Each entry is the row of the
+    // square's top left pixel in the upper 16 bits and the column in the lower 16 bits.
+    // The order is only rebuilt when the region changes size.
+    //
+    int[] getScanOrder(int region, int rows, int columns)
+    {
+        ScanOrder scanOrder = scanOrders[region];
+
+        if (scanOrder == null || scanOrder.rows != rows || scanOrder.columns != columns)
+        {
+            scanOrder = new ScanOrder(rows, columns);
+            scanOrders[region] = scanOrder;
+        }
+
+        return scanOrder.squares;
+    }
+
+    // this class holds the center-out order of the squares for a region size
+    private class ScanOrder {
+        final int rows;
+        final int columns;
+        final int[] squares;
+
+        // constructor
+        public ScanOrder (int rows, int columns)
+        {
+            this.rows = rows;
+            this.columns = columns;
+
+            List<Integer> squareList = new ArrayList<Integer>();
+            for (int row = 0; row < rows - SquareSize; row += SquareSize)
+            {
+                for (int column = 0; column < columns - SquareSize; column += SquareSize)
+                {
+                    squareList.add((row << 16) | column);
+                }
+            }
+
+            // sort by distance from the center of the region
+            final double centerRow = (rows - SquareSize) / 2.0;
+            final double centerColumn = (columns - SquareSize) / 2.0;
+            Collections.sort(squareList, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Double.compare(distance(a), distance(b));
+                }
+
+                private double distance(int square) {
+                    double deltaRow = (square >> 16) - centerRow;
+                    double deltaColumn = (square & 0xFFFF) - centerColumn;
+                    return deltaRow * deltaRow + deltaColumn * deltaColumn;
+                }
+            });
+
+            squares = new int[squareList.size()];
+            for (int index = 0; index < squares.length; ++index) {
+                squares[index] = squareList.get(index);
+            }
+        }
+    }
+
     @Override
     public void init(int width, int height, CameraCalibration calibration)
     {
@@ -607,30 +1753,159 @@ public class ColorVisionProcessor  implements VisionProcessor {
     @Override
     public Mat processFrame(Mat input, long captureTimeNanos)
     {
-        Mat hsvMat = new Mat();
-        ColorData colorData = new ColorData();
+        if (AsyncProcessing)
+        {
+            queueFrame(input, captureTimeNanos);
+        }
+        else
+        {
+            Mat hsvMat;
+            Mat[] regionMats = new Mat[NumRegions];
+            FrameResults results = new FrameResults();
+
+            // clear out previous data
+            debugList.clear();
+
+            long convertStartNanos = System.nanoTime();
 
-        // clear out previous data
-        telemetryData.clear();
-        debugList.clear();
+            results.sequence = frameSequence++;
+            results.captureTimeNanos = captureTimeNanos;
 
-        // convert to HSV format
-        hsvMat = inputToHSV(input);
+            // pick up any config change from the opMode
+            results.regions = getCompiledRegions();
+
+            // convert to HSV format
+            hsvMat = inputToHSV(input);
+
+            for (int region = 0; region < NumRegions; ++region) {
+                regionMats[region] = hsvMat.submat(results.regions.rects[region]);
+            }
+
+            long searchStartNanos = System.nanoTime();
+            results.convertTimeNanos = searchStartNanos - convertStartNanos;
+
+            // if AsyncProcessing was just turned off, this waits for the worker to finish
+            // the frame it is on, so the two don't search and publish at the same time
+            synchronized (searchLock)
+            {
+                // for each region, compute the color data
+                searchRegions(regionMats, debugList, results);
+
+                results.searchTimeNanos = System.nanoTime() - searchStartNanos;
+                publishResults(results, debugList);
+            }
+
+            hsvMat.release();
+        }
+
+        // draw debug data (square outlines) on the screen
+        Mat output = input;
+        for (DebugData data : synchronizedDebugList.getList())
+        {
+            Scalar color = getColorScalar (data.color);
+
+            Imgproc.rectangle(output, data.upperLeft, data.lowerRight, color, data.width);
+        }
+
+        return output;
+    }
+
+    // this class holds the region rectangles for a config. It is not changed after it
+    // is made, so frames that are still being searched can keep using it.
+    private class CompiledRegions {
+        final ColorProcessorConfig config;
+        final Rect[] rects = new Rect[NumRegions];
+        final Point[] topLeft = new Point[NumRegions];
+        final Point[] bottomRight = new Point[NumRegions];
+
+        // constructor
+        public CompiledRegions (ColorProcessorConfig config)
+        {
+            this.config = config;
+
+            for (int region = 0; region < NumRegions; ++region) {
+                topLeft[region] = config.getRegionTopLeft(region);
+                bottomRight[region] = new Point(topLeft[region].x + config.getRegionWidth(region),
+                                                topLeft[region].y + config.getRegionHeight(region));
+                rects[region] = new Rect(topLeft[region], bottomRight[region]);
+            }
+        }
+    }
+
+    // returns the regions for the latest config. Called by the camera thread at the
+    // start of a frame. The regions are only rebuilt when the config has changed.
+    CompiledRegions getCompiledRegions()
+    {
+        ColorProcessorConfig config = nextConfig.get();
+
+        if (compiledRegions == null || compiledRegions.config != config)
+        {
+            compiledRegions = new CompiledRegions(config);
+        }
+
+        return compiledRegions;
+    }
+
+    //
+    // For AsyncProcessing, this copies each region into a buffer and hands it to the
+    // worker thread. Only the copy is done on the camera thread.
+    // It is synchronized with close, so a frame is never queued while the buffers are freed.
+    //
+    synchronized void queueFrame(Mat input, long captureTimeNanos)
+    {
+        // after close, the buffers are gone and a new worker must not be started
+        if (closed)
+        {
+            return;
+        }
+
+        if (workerThread == null)
+        {
+            workerThread = new Thread(new ColorWorker(), "ColorVisionProcessor");
+            workerThread.setDaemon(true);
+            workerThread.start();
+        }
+
+        FrameBuffer buffer = framePool.get();
+
+        // pick up any config change from the opMode
+        buffer.regions = getCompiledRegions();
 
-        // for each region, compute the color data
         for (int region = 0; region < NumRegions; ++region) {
+            // copyTo reuses the buffer's memory if the region size hasn't changed
+            input.submat(buffer.regions.rects[region]).copyTo(buffer.rgbMats[region]);
+        }
+        buffer.sequence = frameSequence++;
+        buffer.captureTimeNanos = captureTimeNanos;
+        buffer.queuedTimeNanos = System.nanoTime();
 
-            // compute and save color data
-            region_colorData.add(region, searchForColors(hsvMat, region));
+        FrameBuffer dropped = frameSlot.put(buffer);
+
+        // the worker didn't get to the previous frame in time, so it is skipped
+        if (dropped != null)
+        {
+            asyncStatistics.addDroppedFrame();
+            framePool.release(dropped);
         }
+    }
+
+    //
+    // This function picks the color for each region and saves the results for use
+    // by the opMode. It is called by processFrame, or by the worker thread for AsyncProcessing,
+    // while holding searchLock.
+    //
+    void publishResults(FrameResults results, List<DebugData> debugList)
+    {
+        nextPublishSequence = results.sequence + 1;
+
+        List<EnumMap<Color_Enum, ColorData>> region_colorData = results.colorData;
+        long nowNanos = System.nanoTime();
+        boolean publishTelemetry = telemetryChannel.isPublishDue(nowNanos);
 
         /*
          * Draw a rectangle showing each region on the screen.
          * Simply a visual aid. Serves no functional purpose.
          */
-        Scalar WHITE = new Scalar (255, 255, 255);
-        DebugData debugData = new DebugData();
-        
         for (int region = 0; region < NumRegions; ++region)
         {
             Color_Enum color = Color_Enum.Color_None;
@@ -648,39 +1923,67 @@ public class ColorVisionProcessor  implements VisionProcessor {
                 color = Color_Enum.Color_Blue;
             }
 
-            telemetryData.add (new TelemetryData("Region " + region + " Color", color));
+            results.regionColor[region] = color;
 
-            Point regionBottomRight = new Point(RegionTopLeft[region].x + RegionWidth[region],
-                                                RegionTopLeft[region].y + RegionHeight[region]);
+            if (publishTelemetry) {
+                telemetryChannel.set(region, color.ordinal());
+            }
 
             // if no color found, draw region outline in white
             if (color == Color_Enum.Color_None)
             {
                 color = Color_Enum.Color_White;
             }
-            debugList.add(new DebugData(color, RegionTopLeft[region], regionBottomRight, 2));
+            debugList.add(new DebugData(color, results.regions.topLeft[region], results.regions.bottomRight[region], 2));
         }
 
-        telemetryData.add (new TelemetryData("Red region", getRegion (Color_Enum.Color_Red)));
-        telemetryData.add (new TelemetryData("Blue region", getRegion (Color_Enum.Color_Blue)));
+        // rank the regions for each color once, so the opMode doesn't have to search them
+        RegionRanking ranking = new RegionRanking(region_colorData);
 
         // save data for use by the opMode
-        synchronizedColorData.setColorData (region_colorData);
-        synchronizedTelemetryData.setList (telemetryData);
+        synchronizedColorData.setColorData (results, ranking);
 
-        // clear out for next time
-        telemetryData.clear();
+        // save data for after the match
+        FrameJournal journal = frameJournal;
+        if (journal != null)
+        {
+            journal.write(results.captureTimeNanos, results.queueLatencyNanos, results.convertTimeNanos,
+                          results.searchTimeNanos, results.squaresVisited, results.queryRegion,
+                          results.regionColor, results.colorData);
+        }
+        synchronizedDebugList.setList (debugList);
 
-        // draw debug data (square outlines) on the screen
-        Mat output = input;
-        for (DebugData data : debugList)
+        if (publishTelemetry)
         {
-            Scalar color = getColorScalar (data.color);
+            telemetryChannel.set(telemetryChannel.RedRegionSlot, ranking.getBestRegion (Color_Enum.Color_Red));
+            telemetryChannel.set(telemetryChannel.BlueRegionSlot, ranking.getBestRegion (Color_Enum.Color_Blue));
+            telemetryChannel.set(telemetryChannel.SearchTimeSlot, (results.convertTimeNanos + results.searchTimeNanos) / 1.0e6);
+            telemetryChannel.set(telemetryChannel.SquaresVisitedSlot, results.squaresVisited);
 
-            Imgproc.rectangle(output, data.upperLeft, data.lowerRight, color, data.width);
-        }
+            if (results.queryUsed)
+            {
+                telemetryChannel.set(telemetryChannel.QueryRegionSlot, results.queryRegion);
+            }
+            else
+            {
+                telemetryChannel.hide(telemetryChannel.QueryRegionSlot);
+            }
 
-        return output;
+            if (results.asyncProcessing)
+            {
+                telemetryChannel.set(telemetryChannel.DroppedFramesSlot, getDroppedFrameCount());
+                telemetryChannel.set(telemetryChannel.QueueLatencySlot, getQueueLatencyMs());
+                telemetryChannel.set(telemetryChannel.WorkerErrorsSlot, getWorkerErrorCount());
+            }
+            else
+            {
+                telemetryChannel.hide(telemetryChannel.DroppedFramesSlot);
+                telemetryChannel.hide(telemetryChannel.QueueLatencySlot);
+                telemetryChannel.hide(telemetryChannel.WorkerErrorsSlot);
+            }
+
+            telemetryChannel.publish(nowNanos);
+        }
     }
 
 }
@@ -0,0 +1,133 @@
+/* ConceptColorProcessorBenchmark.java - measures how ColorVisionProcessor scales
+ * Copyright (C) 2023 LAtimes2
+ *
+ * MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission
+ * notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import android.os.Debug;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+/*
+ * This OpMode runs the ColorProcessorBenchmark on the Control Hub, so you know how many
+ * regions (and how big) fit in a frame before a competition. See ColorProcessorBenchmark
+ * for the cases it runs and what it measures.
+ *
+ * The processor runs on the Control Hub CPU like it does in a match. Allocations are counted
+ * with android.os.Debug. Those counters are deprecated since Android 6 (API 23) and may
+ * read 0 on some Android versions; the desktop benchmark (see the desktop folder) counts
+ * bytes another way.
+ *
+ * The results are shown on the Driver Station and saved to REPORT_FILE.
+ */
+@TeleOp(name = "Concept: ColorProcessor Benchmark", group = "Concept")
+
+public class ConceptColorProcessorBenchmark extends LinearOpMode {
+
+    private static final String REPORT_FILE = "/sdcard/FIRST/colorBenchmark.csv";
+
+    @Override
+    public void runOpMode() {
+
+        telemetry.addData(">", "Touch Play to run the benchmark (a few minutes)");
+        telemetry.update();
+        waitForStart();
+
+        ColorProcessorBenchmark benchmark = new ColorProcessorBenchmark(new DebugAllocationCounter(),
+            new ColorProcessorBenchmark.Progress() {
+                @Override
+                public void caseStarted(String description) {
+                    telemetry.addData("Running", description);
+                    telemetry.update();
+                }
+
+                @Override
+                public boolean keepRunning() {
+                    return opModeIsActive();
+                }
+            });
+
+        List<String> report = benchmark.run();
+        String saved = saveReport(report);
+
+        while (opModeIsActive()) {
+            telemetry.addData("Cases over budget", benchmark.getOverBudgetCount());
+            telemetry.addData("Report", saved);
+            telemetry.addLine("avgMs maxMs ns/px ns/sq allocs");
+            for (int line = 1; line < report.size(); ++line) {
+                telemetry.addLine(ColorProcessorBenchmark.shortLine(report.get(line)));
+            }
+            telemetry.update();
+
+            sleep(100);
+        }
+
+    }   // end method runOpMode()
+
+    // counts allocations with the Android Debug thread counters, which are deprecated
+    // since API 23 but still present. They may read 0 on some Android versions.
+    @SuppressWarnings("deprecation")
+    private static class DebugAllocationCounter implements ColorProcessorBenchmark.AllocationCounter {
+
+        @Override
+        public void start() {
+            Debug.resetThreadAllocCount();
+            Debug.resetThreadAllocSize();
+            Debug.startAllocCounting();
+        }
+
+        @Override
+        public void stop() {
+            Debug.stopAllocCounting();
+        }
+
+        @Override
+        public long getCount() {
+            return Debug.getThreadAllocCount();
+        }
+
+        @Override
+        public long getBytes() {
+            return Debug.getThreadAllocSize();
+        }
+    }
+
+    // writes the report as a CSV file, and returns a message saying where it went
+    private String saveReport(List<String> report) {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(REPORT_FILE))) {
+            for (String line : report) {
+                writer.println(line);
+            }
+            return "saved to " + REPORT_FILE;
+        } catch (IOException e) {
+            return "could not save: " + e.getMessage();
+        }
+    }
+
+}   // end class
@@ -39,6 +39,8 @@ import org.firstinspires.ftc.vision.apriltag.AprilTagDetection;
 import org.firstinspires.ftc.vision.apriltag.AprilTagProcessor;
 import org.opencv.core.Point;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 /*
@@ -54,6 +56,11 @@ public class ConceptMultiVisionProcessor extends LinearOpMode {
 
     private static final boolean USE_WEBCAM = true;  // true for webcam, false for phone camera
 
+    // true to save the color results of each frame for looking at after the match (see FrameJournal).
+    // These are not final so the desktop test can turn the journal on.
+    static boolean USE_JOURNAL = false;
+    static String JOURNAL_FILE = "/sdcard/FIRST/colorJournal.bin";
+
     /**
      * The variable to store our instance of the AprilTag processor.
      */
@@ -69,6 +76,15 @@ public class ConceptMultiVisionProcessor extends LinearOpMode {
      */
     private VisionPortal visionPortal;
 
+    /**
+     * The variable to store our instance of the color results journal, if used.
+     */
+    private FrameJournal journal = null;
+
+    // used to change the color thresholds once per bumper press
+    private boolean lastLeftBumper = false;
+    private boolean lastRightBumper = false;
+
     @Override
     public void runOpMode() {
 
@@ -88,6 +104,7 @@ public class ConceptMultiVisionProcessor extends LinearOpMode {
                 telemetry.addLine();
 
                 telemetryColorProcessor();
+                tuneColorProcessor();
 
                 // Push telemetry to the Driver Station.
                 telemetry.update();
@@ -106,6 +123,16 @@ public class ConceptMultiVisionProcessor extends LinearOpMode {
 
         // Save more CPU resources when camera is no longer needed.
         visionPortal.close();
+        colorProcessor.close();
+
+        if (journal != null) {
+            colorProcessor.setJournal(null);
+            try {
+                journal.close();
+            } catch (IOException e) {
+                // nothing more can be done at the end of the opMode
+            }
+        }
 
     }   // end method runOpMode()
 
@@ -123,6 +150,16 @@ public class ConceptMultiVisionProcessor extends LinearOpMode {
         // set Color processor regions on the screen
         setColorProcessorRegions();
 
+        // Save each frame's color results, 20000 frames is about 11 minutes at 30 frames per second.
+        if (USE_JOURNAL) {
+            try {
+                journal = new FrameJournal(new File(JOURNAL_FILE), colorProcessor.NumRegions, 20000);
+                colorProcessor.setJournal(journal);
+            } catch (IOException e) {
+                telemetry.addData("Journal", "could not open: " + e.getMessage());
+            }
+        }
+
         // Create the vision portal the easy way.
         if (USE_WEBCAM) {
             visionPortal = VisionPortal.easyCreateWithDefaults(
@@ -150,18 +187,36 @@ public class ConceptMultiVisionProcessor extends LinearOpMode {
         // For webcam, screen size is (0,0) to (639,479)
 
         // set default values which can be changed later
-        colorProcessor.RegionTopLeft[0] = new Point(109, 98);
-        colorProcessor.RegionWidth[0] = 60;
-        colorProcessor.RegionHeight[0] = 80;
+        colorProcessor.setConfig(colorProcessor.getConfig()
+            .withRegion(0, new Point(109, 98), 60, 80)
+            .withRegion(1, new Point(181, 98), 60, 90)
+            .withRegion(2, new Point(253, 98), 100, 100));
+    }
 
-        colorProcessor.RegionTopLeft[1] = new Point(181, 98);
-        colorProcessor.RegionWidth[1] = 60;
-        colorProcessor.RegionHeight[1] = 90;
+    /**
+     * Change the color thresholds from the gamepad while the camera is running.
+     * The new values are used starting with the next camera frame.
+     */
+    private void tuneColorProcessor() {
 
-        colorProcessor.RegionTopLeft[2] = new Point(253, 98);
-        colorProcessor.RegionWidth[2] = 100;
-        colorProcessor.RegionHeight[2] = 100;
-    }
+        int saturationChange = 0;
+
+        if (gamepad1.right_bumper && !lastRightBumper) {
+            saturationChange = 5;
+        } else if (gamepad1.left_bumper && !lastLeftBumper) {
+            saturationChange = -5;
+        }
+        lastRightBumper = gamepad1.right_bumper;
+        lastLeftBumper = gamepad1.left_bumper;
+
+        if (saturationChange != 0) {
+            ColorProcessorConfig config = colorProcessor.getConfig();
+            colorProcessor.setConfig(config.withMinSaturation(config.getMinSaturation() + saturationChange));
+        }
+
+        telemetry.addData("Min Saturation (bumpers)", colorProcessor.getConfig().getMinSaturation());
+
+    }   // end method tuneColorProcessor()
 
     /**
      * Add telemetry about AprilTag detections.
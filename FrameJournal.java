@@ -0,0 +1,191 @@
+/* FrameJournal.java - saves ColorVisionProcessor results for after the match
+ * Copyright (C) 2023 LAtimes2
+ *
+ * MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission
+ * notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.EnumMap;
+import java.util.List;
+
+//////////////////////////////////////////////////////////
+//
+// This class saves a small record of each frame's ColorVisionProcessor results
+// to a file on the Control Hub, so the timing and color decisions can be looked at
+// after the match with FrameJournalReader (in the desktop folder).
+//
+// The whole file is created when the journal is opened and mapped into memory,
+// so saving a frame only stores numbers into memory. Nothing new is created and
+// nothing waits for the disk, so it can be left on during matches. When the file
+// is full it starts over at the beginning, keeping the newest frames.
+//
+// Example:
+//
+//      try {
+//          journal = new FrameJournal(new File("/sdcard/FIRST/colorJournal.bin"), 3, 20000);
+//          colorProcessor.setJournal(journal);
+//      } catch (IOException e) {
+//          telemetry.addData("Journal", "could not open: " + e.getMessage());
+//      }
+//
+//      // at the end of the opMode
+//      colorProcessor.setJournal(null);
+//      journal.close();
+//
+// File layout (little endian):
+//
+//      header, HeaderSize bytes:
+//          int magic, int version, int numRegions, int numColors,
+//          int recordSize, int maxRecords, long recordsWritten
+//
+//      each record, recordSize bytes:
+//          long sequence, long captureTimeNanos, long queueLatencyNanos,
+//          long convertTimeNanos, long searchTimeNanos,
+//          int squaresVisited, int queryRegion,
+//          then for each region:
+//              int chosen color (Color_Enum ordinal),
+//              then for each color: int squareCount, float score
+//
+/////////////////////////////////////////////////////////
+
+public class FrameJournal {
+
+    public static final int Magic = 0x434A524E;     // "CJRN"
+    public static final int Version = 1;
+    public static final int HeaderSize = 32;
+
+    // header offsets
+    static final int NumRegionsOffset = 8;
+    static final int NumColorsOffset = 12;
+    static final int RecordSizeOffset = 16;
+    static final int MaxRecordsOffset = 20;
+    static final int RecordsWrittenOffset = 24;
+
+    // record offsets
+    static final int SequenceOffset = 0;
+    static final int CaptureTimeOffset = 8;
+    static final int QueueLatencyOffset = 16;
+    static final int ConvertTimeOffset = 24;
+    static final int SearchTimeOffset = 32;
+    static final int SquaresVisitedOffset = 40;
+    static final int QueryRegionOffset = 44;
+    static final int RegionDataOffset = 48;
+
+    private final ColorVisionProcessor.Color_Enum[] colors = ColorVisionProcessor.Color_Enum.values();
+
+    private final int numRegions;
+    private final int recordSize;
+    private final int maxRecords;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+
+    private long sequence = 0;
+
+    // constructor. This creates the whole file, so it should be called before the match starts.
+    public FrameJournal(File journalFile, int numRegions, int maxRecords) throws IOException {
+        if (maxRecords <= 0) {
+            throw new IllegalArgumentException("maxRecords is " + maxRecords + ", must be at least 1");
+        }
+
+        this.numRegions = numRegions;
+        this.maxRecords = maxRecords;
+        this.recordSize = getRecordSize(numRegions, colors.length);
+
+        long fileSize = HeaderSize + (long) recordSize * maxRecords;
+
+        file = new RandomAccessFile(journalFile, "rw");
+        file.setLength(fileSize);
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(0, Magic);
+        buffer.putInt(4, Version);
+        buffer.putInt(NumRegionsOffset, numRegions);
+        buffer.putInt(NumColorsOffset, colors.length);
+        buffer.putInt(RecordSizeOffset, recordSize);
+        buffer.putInt(MaxRecordsOffset, maxRecords);
+        buffer.putLong(RecordsWrittenOffset, 0);
+    }
+
+    public int getNumRegions() {
+        return numRegions;
+    }
+
+    public static int getRecordSize(int numRegions, int numColors) {
+        return RegionDataOffset + numRegions * (4 + numColors * 8);
+    }
+
+    //
+    // Saves one frame. This is called by the ColorVisionProcessor after each frame,
+    // from the camera thread (or the worker thread for AsyncProcessing).
+    //
+    public void write(long captureTimeNanos, long queueLatencyNanos, long convertTimeNanos, long searchTimeNanos,
+                      int squaresVisited, int queryRegion,
+                      ColorVisionProcessor.Color_Enum[] regionColor,
+                      List<EnumMap<ColorVisionProcessor.Color_Enum, ColorVisionProcessor.ColorData>> colorData) {
+
+        int position = HeaderSize + (int) (sequence % maxRecords) * recordSize;
+
+        buffer.putLong(position + SequenceOffset, sequence);
+        buffer.putLong(position + CaptureTimeOffset, captureTimeNanos);
+        buffer.putLong(position + QueueLatencyOffset, queueLatencyNanos);
+        buffer.putLong(position + ConvertTimeOffset, convertTimeNanos);
+        buffer.putLong(position + SearchTimeOffset, searchTimeNanos);
+        buffer.putInt(position + SquaresVisitedOffset, squaresVisited);
+        buffer.putInt(position + QueryRegionOffset, queryRegion);
+
+        position += RegionDataOffset;
+
+        for (int region = 0; region < numRegions; ++region) {
+            buffer.putInt(position, regionColor[region].ordinal());
+            position += 4;
+
+            EnumMap<ColorVisionProcessor.Color_Enum, ColorVisionProcessor.ColorData> regionData = colorData.get(region);
+
+            for (ColorVisionProcessor.Color_Enum color : colors) {
+                ColorVisionProcessor.ColorData data = regionData.get(color);
+
+                buffer.putInt(position, data.squareCount);
+                buffer.putFloat(position + 4, (float) data.score);
+                position += 8;
+            }
+        }
+
+        sequence++;
+
+        // update the count last, so a record is only counted once it is complete
+        buffer.putLong(RecordsWrittenOffset, sequence);
+    }
+
+    // writes everything to the file and closes it
+    public void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+}
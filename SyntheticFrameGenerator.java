@@ -0,0 +1,151 @@
+/* SyntheticFrameGenerator.java - test frames for ColorVisionProcessor
+ * Copyright (C) 2023 LAtimes2
+ *
+ * MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission
+ * notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import java.util.Random;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+//////////////////////////////////////////////////////////
+//
+// This class makes camera-like frames without a camera, so the
+// ColorVisionProcessor can be checked and timed with known input.
+//
+// The frame is built in HSV (the same format the processor uses to find
+// colors), then converted to RGB like a frame from the VisionPortal.
+// The random numbers use a fixed seed, so the same frame is made every time.
+//
+// Example:
+//
+//      SyntheticFrameGenerator generator = new SyntheticFrameGenerator(640, 480, 1);
+//      generator.clear(0, 0, 128);                                   // gray background
+//      generator.addPatch(new Rect(109, 98, 60, 80), 75, 200, 200);  // green in region 0
+//      generator.addSplitRedPatch(new Rect(181, 98, 60, 80), 177, 2, 200, 200);
+//      generator.addNoise(2, 10);
+//
+//      Mat frame = generator.getFrame();
+//      colorProcessor.processFrame(frame, System.nanoTime());
+//
+/////////////////////////////////////////////////////////
+
+public class SyntheticFrameGenerator {
+
+    // hue in OpenCV goes from 0 to 179
+    final int MaxHue = 180;
+
+    private final int width;
+    private final int height;
+    private final Random random;
+
+    // HSV bytes for the whole frame, 3 bytes per pixel
+    private final byte[] hsvPixels;
+
+    private final Mat hsvMat;
+    private final Mat rgbMat = new Mat();
+
+    // constructor
+    public SyntheticFrameGenerator(int width, int height, long seed) {
+        this.width = width;
+        this.height = height;
+        this.random = new Random(seed);
+
+        hsvPixels = new byte[width * height * 3];
+        hsvMat = new Mat(height, width, CvType.CV_8UC3);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // sets every pixel to the same color
+    public void clear(int hue, int saturation, int brightness) {
+        addPatch(new Rect(0, 0, width, height), hue, saturation, brightness);
+    }
+
+    // fills a rectangle with a solid color
+    public void addPatch(Rect rect, int hue, int saturation, int brightness) {
+        for (int row = rect.y; row < rect.y + rect.height; ++row) {
+            for (int column = rect.x; column < rect.x + rect.width; ++column) {
+                setPixel(row, column, hue, saturation, brightness);
+            }
+        }
+    }
+
+    // fills a rectangle with red on both sides of the 0/180 hue boundary. The left
+    // half is highHue (such as 177) and the right half is lowHue (such as 2), so the
+    // red is only found on both sides if the wrap is handled.
+    //
+    // Each half is a solid block, since the processor classifies a square by its
+    // average hue. A square with both hues mixed in it has a very high standard
+    // deviation and is not a color, so each half should be at least one square wide.
+    public void addSplitRedPatch(Rect rect, int highHue, int lowHue, int saturation, int brightness) {
+        int leftWidth = rect.width / 2;
+
+        addPatch(new Rect(rect.x, rect.y, leftWidth, rect.height), highHue, saturation, brightness);
+        addPatch(new Rect(rect.x + leftWidth, rect.y, rect.width - leftWidth, rect.height), lowHue, saturation, brightness);
+    }
+
+    // adds random noise to every pixel. The hue wraps around at 180 like a real
+    // camera, and saturation and brightness are limited to 0-255.
+    public void addNoise(double hueStdDev, double valueStdDev) {
+        for (int index = 0; index < hsvPixels.length; index += 3) {
+            int hue = (hsvPixels[index] & 0xFF) + (int) Math.round(random.nextGaussian() * hueStdDev);
+            int saturation = (hsvPixels[index + 1] & 0xFF) + (int) Math.round(random.nextGaussian() * valueStdDev);
+            int brightness = (hsvPixels[index + 2] & 0xFF) + (int) Math.round(random.nextGaussian() * valueStdDev);
+
+            hsvPixels[index] = (byte) (((hue % MaxHue) + MaxHue) % MaxHue);
+            hsvPixels[index + 1] = (byte) limit(saturation);
+            hsvPixels[index + 2] = (byte) limit(brightness);
+        }
+    }
+
+    // returns the frame in RGB format, the same as the VisionPortal passes to processFrame.
+    // The same Mat is returned each time, so copy it if it needs to be kept.
+    public Mat getFrame() {
+        hsvMat.put(0, 0, hsvPixels);
+        Imgproc.cvtColor(hsvMat, rgbMat, Imgproc.COLOR_HSV2RGB);
+
+        return rgbMat;
+    }
+
+    private void setPixel(int row, int column, int hue, int saturation, int brightness) {
+        int index = (row * width + column) * 3;
+
+        hsvPixels[index] = (byte) (hue % MaxHue);
+        hsvPixels[index + 1] = (byte) limit(saturation);
+        hsvPixels[index + 2] = (byte) limit(brightness);
+    }
+
+    private int limit(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
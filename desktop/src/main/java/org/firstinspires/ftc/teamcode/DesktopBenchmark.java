@@ -0,0 +1,111 @@
+/* DesktopBenchmark.java - runs the color processor benchmark on a computer
+ * Copyright (C) 2023 LAtimes2
+ *
+ * MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission
+ * notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+//////////////////////////////////////////////////////////
+//
+// This runs the ColorProcessorBenchmark on a computer, which is quicker to try changes
+// with than the Control Hub. The times are much lower than on the Control Hub, but
+// the way they grow with each sweep is similar.
+//
+// The processor gets about one core on the Control Hub, so pin the benchmark to one
+// core for the closest match. On Linux:
+//
+//      cd desktop
+//      taskset -c 0 gradle benchmark
+//
+// The report is printed and saved to build/colorBenchmark.csv. Allocated bytes come
+// from the JVM's per-thread counter; the number of objects can't be counted, so it
+// shows as n/a.
+//
+/////////////////////////////////////////////////////////
+
+public class DesktopBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        nu.pattern.OpenCV.loadLocally();
+
+        String reportFile = (args.length > 0) ? args[0] : "build/colorBenchmark.csv";
+
+        ColorProcessorBenchmark benchmark = new ColorProcessorBenchmark(new ThreadAllocationCounter(),
+            new ColorProcessorBenchmark.Progress() {
+                @Override
+                public void caseStarted(String description) {
+                }
+
+                @Override
+                public boolean keepRunning() {
+                    return true;
+                }
+            });
+
+        List<String> report = benchmark.run();
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter(reportFile))) {
+            for (String line : report) {
+                System.out.println(line);
+                writer.println(line);
+            }
+        }
+
+        System.out.printf("%nCases over budget: %d%nSaved to %s%n", benchmark.getOverBudgetCount(), reportFile);
+    }
+
+    // counts the bytes allocated by this thread with the JVM's ThreadMXBean
+    private static class ThreadAllocationCounter implements ColorProcessorBenchmark.AllocationCounter {
+
+        private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        private long startBytes;
+        private long stopBytes;
+
+        @Override
+        public void start() {
+            startBytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        @Override
+        public void stop() {
+            stopBytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        @Override
+        public long getCount() {
+            return -1;
+        }
+
+        @Override
+        public long getBytes() {
+            return stopBytes - startBytes;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/* FrameJournalReader.java - summarizes a FrameJournal file on a desktop computer
+ * Copyright (C) 2023 LAtimes2
+ *
+ * MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission
+ * notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.firstinspires.ftc.teamcode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+//////////////////////////////////////////////////////////
+//
+// This is a desktop tool for the file saved by FrameJournal. It only uses
+// standard Java and doesn't use the other classes, so it can be run without
+// the FTC SDK or OpenCV. The file layout is described in FrameJournal.
+//
+// Copy the file off the Control Hub, for example:
+//
+//      adb pull /sdcard/FIRST/colorJournal.bin
+//
+// then run this file by itself (Java 11 or newer):
+//
+//      java desktop/src/main/java/org/firstinspires/ftc/teamcode/FrameJournalReader.java colorJournal.bin
+//
+// It is kept in the desktop folder, not with the robot code, because it uses
+// java.nio.file, which needs a newer Android than the Control Hub runs.
+//
+// It prints the timing of each stage (median, 90%, 99% and worst case),
+// the time between camera frames, and how often each region's color changed.
+//
+/////////////////////////////////////////////////////////
+
+public class FrameJournalReader {
+
+    // these must match FrameJournal
+    static final int Magic = 0x434A524E;
+    static final int Version = 1;
+    static final int HeaderSize = 32;
+
+    static final int NumRegionsOffset = 8;
+    static final int NumColorsOffset = 12;
+    static final int RecordSizeOffset = 16;
+    static final int MaxRecordsOffset = 20;
+    static final int RecordsWrittenOffset = 24;
+
+    static final int SequenceOffset = 0;
+    static final int CaptureTimeOffset = 8;
+    static final int QueueLatencyOffset = 16;
+    static final int ConvertTimeOffset = 24;
+    static final int SearchTimeOffset = 32;
+    static final int SquaresVisitedOffset = 40;
+    static final int QueryRegionOffset = 44;
+    static final int RegionDataOffset = 48;
+
+    // these must match ColorVisionProcessor.Color_Enum
+    static final String[] ColorNames = { "None", "Green", "Red", "Blue", "Yellow", "White" };
+
+    // one saved frame
+    static class Record {
+        long sequence;
+        long captureTime;
+        long queueLatency;
+        long convertTime;
+        long searchTime;
+        int squaresVisited;
+        int queryRegion;
+        int[] regionColor;          // Color_Enum ordinal for each region
+        int[][] squareCount;        // [region][color]
+        float[][] score;            // [region][color]
+    }
+
+    // the header and the frames still in the file, oldest first
+    static class Journal {
+        int numRegions;
+        int numColors;
+        int maxRecords;
+        long recordsWritten;
+        Record[] records;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("usage: FrameJournalReader <journal file>");
+            return;
+        }
+
+        Journal journal;
+        try {
+            journal = read(Files.readAllBytes(Paths.get(args[0])));
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        print(journal);
+    }
+
+    static Journal read(byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (data.length < HeaderSize || buffer.getInt(0) != Magic || buffer.getInt(4) != Version) {
+            throw new IOException("not a color journal file (or a different version)");
+        }
+
+        Journal journal = new Journal();
+        journal.numRegions = buffer.getInt(NumRegionsOffset);
+        journal.numColors = buffer.getInt(NumColorsOffset);
+        journal.maxRecords = buffer.getInt(MaxRecordsOffset);
+        journal.recordsWritten = buffer.getLong(RecordsWrittenOffset);
+
+        int recordSize = buffer.getInt(RecordSizeOffset);
+
+        if (data.length < HeaderSize + (long) recordSize * journal.maxRecords) {
+            throw new IOException("journal file is too short");
+        }
+
+        // if the file filled up, the oldest records were written over
+        int count = (int) Math.min(journal.recordsWritten, journal.maxRecords);
+        long firstSequence = journal.recordsWritten - count;
+
+        journal.records = new Record[count];
+
+        for (int index = 0; index < count; ++index) {
+            long sequence = firstSequence + index;
+            int position = HeaderSize + (int) (sequence % journal.maxRecords) * recordSize;
+
+            Record record = new Record();
+            record.sequence = buffer.getLong(position + SequenceOffset);
+            record.captureTime = buffer.getLong(position + CaptureTimeOffset);
+            record.queueLatency = buffer.getLong(position + QueueLatencyOffset);
+            record.convertTime = buffer.getLong(position + ConvertTimeOffset);
+            record.searchTime = buffer.getLong(position + SearchTimeOffset);
+            record.squaresVisited = buffer.getInt(position + SquaresVisitedOffset);
+            record.queryRegion = buffer.getInt(position + QueryRegionOffset);
+
+            record.regionColor = new int[journal.numRegions];
+            record.squareCount = new int[journal.numRegions][journal.numColors];
+            record.score = new float[journal.numRegions][journal.numColors];
+
+            int regionPosition = position + RegionDataOffset;
+            for (int region = 0; region < journal.numRegions; ++region) {
+                record.regionColor[region] = buffer.getInt(regionPosition);
+                regionPosition += 4;
+
+                for (int color = 0; color < journal.numColors; ++color) {
+                    record.squareCount[region][color] = buffer.getInt(regionPosition);
+                    record.score[region][color] = buffer.getFloat(regionPosition + 4);
+                    regionPosition += 8;
+                }
+            }
+
+            journal.records[index] = record;
+        }
+
+        return journal;
+    }
+
+    static void print(Journal journal) {
+        int count = journal.records.length;
+        int numRegions = journal.numRegions;
+        int numColors = journal.numColors;
+
+        System.out.printf("%d frames saved, %d in file, %d regions%n", journal.recordsWritten, count, numRegions);
+        if (count == 0) {
+            return;
+        }
+
+        long[] queueLatency = new long[count];
+        long[] convertTime = new long[count];
+        long[] searchTime = new long[count];
+        long[] frameInterval = new long[count - 1];
+        long totalSquares = 0;
+
+        for (int index = 0; index < count; ++index) {
+            Record record = journal.records[index];
+
+            queueLatency[index] = record.queueLatency;
+            convertTime[index] = record.convertTime;
+            searchTime[index] = record.searchTime;
+            totalSquares += record.squaresVisited;
+
+            if (index > 0) {
+                frameInterval[index - 1] = record.captureTime - journal.records[index - 1].captureTime;
+            }
+        }
+
+        System.out.println();
+        System.out.println("                     median      90%      99%    worst  (ms)");
+        printDistribution("Queue latency", queueLatency);
+        printDistribution("HSV conversion", convertTime);
+        printDistribution("Color search", searchTime);
+        printDistribution("Frame interval", frameInterval);
+
+        System.out.printf("%nAverage squares visited: %.1f%n", (double) totalSquares / count);
+
+        // decision stability: how often each region's color changed, and how long it stayed the same
+        System.out.println();
+        for (int region = 0; region < numRegions; ++region) {
+            int changes = 0;
+            int longestRun = 1;
+            int run = 1;
+            int[] colorFrames = new int[numColors];
+
+            for (int index = 0; index < count; ++index) {
+                int color = journal.records[index].regionColor[region];
+                colorFrames[color]++;
+
+                if (index > 0) {
+                    if (color != journal.records[index - 1].regionColor[region]) {
+                        changes++;
+                        run = 1;
+                    } else {
+                        run++;
+                        longestRun = Math.max(longestRun, run);
+                    }
+                }
+            }
+
+            StringBuilder line = new StringBuilder();
+            line.append(String.format("Region %d: %d color changes, longest steady run %d frames;", region, changes, longestRun));
+            for (int color = 0; color < numColors && color < ColorNames.length; ++color) {
+                if (colorFrames[color] > 0) {
+                    line.append(String.format(" %s %.1f%%", ColorNames[color], 100.0 * colorFrames[color] / count));
+                }
+            }
+            System.out.println(line);
+        }
+    }
+
+    private static void printDistribution(String name, long[] nanos) {
+        if (nanos.length == 0) {
+            return;
+        }
+
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+
+        System.out.printf("%-18s %8.2f %8.2f %8.2f %8.2f%n", name,
+            percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+            sorted[sorted.length - 1] / 1.0e6);
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.min(sorted.length - 1, Math.floor(fraction * sorted.length));
+
+        return sorted[index] / 1.0e6;
+    }
+}
@@ -0,0 +1,6 @@
+package android.graphics;
+
+// Stand-in for the Android class. ColorVisionProcessor draws on the Mat, not the Canvas,
+// so nothing is needed here.
+public class Canvas {
+}
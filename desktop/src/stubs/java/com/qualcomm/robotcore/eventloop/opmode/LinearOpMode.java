@@ -0,0 +1,62 @@
+package com.qualcomm.robotcore.eventloop.opmode;
+
+import com.qualcomm.robotcore.hardware.Gamepad;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+
+// Stand-in for the FTC SDK class, so opModes can be run on a desktop.
+// A test runs runOpMode on its own thread, and uses requestStart and requestOpModeStop
+// in place of the Driver Station buttons.
+public abstract class LinearOpMode {
+
+    public Telemetry telemetry = new Telemetry();
+    public Gamepad gamepad1 = new Gamepad();
+    public Gamepad gamepad2 = new Gamepad();
+    public HardwareMap hardwareMap = new HardwareMap();
+
+    private volatile boolean started = false;
+    private volatile boolean stopRequested = false;
+
+    public abstract void runOpMode() throws InterruptedException;
+
+    // like touching Play on the Driver Station
+    public void requestStart() {
+        started = true;
+    }
+
+    // like touching Stop on the Driver Station
+    public void requestOpModeStop() {
+        stopRequested = true;
+    }
+
+    public void waitForStart() {
+        while (!started && !stopRequested) {
+            sleep(5);
+        }
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    public boolean isStopRequested() {
+        return stopRequested || Thread.currentThread().isInterrupted();
+    }
+
+    public boolean opModeIsActive() {
+        return started && !isStopRequested();
+    }
+
+    public void idle() {
+        Thread.yield();
+    }
+
+    public void sleep(long milliseconds) {
+        try {
+            Thread.sleep(milliseconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
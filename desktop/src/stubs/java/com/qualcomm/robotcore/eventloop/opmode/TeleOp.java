@@ -0,0 +1,15 @@
+package com.qualcomm.robotcore.eventloop.opmode;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Stand-in for the FTC SDK annotation, so opModes can be built on a desktop.
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TeleOp {
+    String name() default "";
+
+    String group() default "";
+}
@@ -0,0 +1,10 @@
+package com.qualcomm.robotcore.hardware;
+
+// Stand-in for the FTC SDK class, so opModes can be run on a desktop.
+// Only the buttons the opModes use are here. A test sets them from its own thread.
+public class Gamepad {
+    public volatile boolean left_bumper = false;
+    public volatile boolean right_bumper = false;
+    public volatile boolean dpad_up = false;
+    public volatile boolean dpad_down = false;
+}
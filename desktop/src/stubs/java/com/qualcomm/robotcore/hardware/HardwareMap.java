@@ -0,0 +1,25 @@
+package com.qualcomm.robotcore.hardware;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Stand-in for the FTC SDK class, so opModes can be run on a desktop.
+// A test puts in the devices the opMode looks up.
+public class HardwareMap {
+
+    private final Map<String, Object> devices = new HashMap<String, Object>();
+
+    public void put(String deviceName, Object device) {
+        devices.put(deviceName, device);
+    }
+
+    public <T> T get(Class<? extends T> classOrInterface, String deviceName) {
+        Object device = devices.get(deviceName);
+
+        if (!classOrInterface.isInstance(device)) {
+            throw new IllegalArgumentException("Unable to find a hardware device with name \"" + deviceName
+                + "\" and type " + classOrInterface.getSimpleName());
+        }
+        return classOrInterface.cast(device);
+    }
+}
@@ -0,0 +1,49 @@
+package org.firstinspires.ftc.robotcore.external;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Stand-in for the FTC SDK Telemetry (an interface there), so opModes can be run on a desktop.
+// Instead of sending the lines to the Driver Station, update keeps them so a test
+// can look at what the opMode showed last.
+public class Telemetry {
+
+    private final List<String[]> lines = new ArrayList<String[]>();
+    private volatile List<String[]> lastUpdate = Collections.emptyList();
+
+    public Object addData(String caption, Object value) {
+        lines.add(new String[] { caption, String.valueOf(value) });
+        return null;
+    }
+
+    public Object addData(String caption, String format, Object... args) {
+        return addData(caption, String.format(format, args));
+    }
+
+    public Object addLine() {
+        return addLine("");
+    }
+
+    public Object addLine(String lineCaption) {
+        lines.add(new String[] { lineCaption, null });
+        return null;
+    }
+
+    public boolean update() {
+        lastUpdate = new ArrayList<String[]>(lines);
+        lines.clear();
+        return true;
+    }
+
+    // the value shown with the caption at the last update, or null if it wasn't shown.
+    // This is only in the stand-in.
+    public String getLastValue(String caption) {
+        for (String[] line : lastUpdate) {
+            if (line[0].equals(caption)) {
+                return line[1];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,7 @@
+package org.firstinspires.ftc.robotcore.external.hardware.camera;
+
+// Stand-in for the FTC SDK enum, so opModes can be run on a desktop.
+public enum BuiltinCameraDirection {
+    BACK,
+    FRONT
+}
@@ -0,0 +1,10 @@
+package org.firstinspires.ftc.robotcore.external.hardware.camera;
+
+// Stand-in for the FTC SDK WebcamName (an interface there), so opModes can be run on a desktop.
+public class WebcamName {
+    public final String name;
+
+    public WebcamName(String name) {
+        this.name = name;
+    }
+}
@@ -0,0 +1,6 @@
+package org.firstinspires.ftc.robotcore.internal.camera.calibration;
+
+// Stand-in for the FTC SDK class. ColorVisionProcessor doesn't use the calibration,
+// so the tests pass null.
+public class CameraCalibration {
+}
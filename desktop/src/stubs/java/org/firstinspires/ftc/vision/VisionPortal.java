@@ -0,0 +1,100 @@
+package org.firstinspires.ftc.vision;
+
+import org.firstinspires.ftc.robotcore.external.hardware.camera.BuiltinCameraDirection;
+import org.firstinspires.ftc.robotcore.external.hardware.camera.WebcamName;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+// Stand-in for the FTC SDK class, so opModes can be run on a desktop.
+// Instead of a camera, a thread gets frames from frameSource and passes them to each
+// processor, the way the SDK's camera thread does. A test sets frameSource before
+// the portal is made.
+public class VisionPortal {
+
+    // gives the next camera frame (RGB, 640x480)
+    public interface FrameSource {
+        Mat getFrame();
+    }
+
+    public static final int WIDTH = 640;
+    public static final int HEIGHT = 480;
+
+    // time between frames. A real camera gives about 33 ms; this is shorter so tests run faster.
+    public static final long FRAME_INTERVAL_MS = 10;
+
+    // where the frames come from. If it is null, every frame is gray.
+    public static volatile FrameSource frameSource = null;
+
+    private final VisionProcessor[] processors;
+    private final Thread cameraThread;
+
+    private volatile boolean streaming = true;
+    private volatile boolean closed = false;
+
+    public static VisionPortal easyCreateWithDefaults(WebcamName camera, VisionProcessor... processors) {
+        return new VisionPortal(processors);
+    }
+
+    public static VisionPortal easyCreateWithDefaults(BuiltinCameraDirection camera, VisionProcessor... processors) {
+        return new VisionPortal(processors);
+    }
+
+    private VisionPortal(VisionProcessor[] processors) {
+        this.processors = processors.clone();
+
+        cameraThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runCamera();
+            }
+        }, "VisionPortal");
+        cameraThread.start();
+    }
+
+    private void runCamera() {
+        for (VisionProcessor processor : processors) {
+            processor.init(WIDTH, HEIGHT, null);
+        }
+
+        FrameSource source = frameSource;
+        Mat gray = new Mat(HEIGHT, WIDTH, CvType.CV_8UC3, new Scalar(128, 128, 128));
+
+        while (!closed) {
+            if (streaming) {
+                Mat frame = (source != null) ? source.getFrame() : gray;
+                long captureTimeNanos = System.nanoTime();
+
+                for (VisionProcessor processor : processors) {
+                    processor.processFrame(frame, captureTimeNanos);
+                }
+            }
+
+            try {
+                Thread.sleep(FRAME_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    public void stopStreaming() {
+        streaming = false;
+    }
+
+    public void resumeStreaming() {
+        streaming = true;
+    }
+
+    // stops the camera thread and waits for it, so no frame is being processed after this returns
+    public void close() {
+        closed = true;
+        cameraThread.interrupt();
+
+        try {
+            cameraThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.firstinspires.ftc.vision;
+
+import android.graphics.Canvas;
+
+import org.firstinspires.ftc.robotcore.internal.camera.calibration.CameraCalibration;
+import org.opencv.core.Mat;
+
+// Stand-in for the FTC SDK interface, so the processor can be built and tested on a desktop.
+// Only the methods ColorVisionProcessor implements are here.
+public interface VisionProcessor {
+    void init(int width, int height, CameraCalibration calibration);
+
+    Object processFrame(Mat frame, long captureTimeNanos);
+
+    void onDrawFrame(Canvas canvas, int onscreenWidth, int onscreenHeight, float scaleBmpPxToCanvasPx, float scaleCanvasDensity, Object userContext);
+}
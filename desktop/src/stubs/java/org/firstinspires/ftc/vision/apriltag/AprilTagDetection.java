@@ -0,0 +1,11 @@
+package org.firstinspires.ftc.vision.apriltag;
+
+import org.opencv.core.Point;
+
+// Stand-in for the FTC SDK class, so opModes can be run on a desktop.
+public class AprilTagDetection {
+    public int id;
+    public AprilTagMetadata metadata;
+    public AprilTagPoseFtc ftcPose;
+    public Point center;
+}
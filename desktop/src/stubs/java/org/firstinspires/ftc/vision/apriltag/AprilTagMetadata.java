@@ -0,0 +1,6 @@
+package org.firstinspires.ftc.vision.apriltag;
+
+// Stand-in for the FTC SDK class, so opModes can be run on a desktop.
+public class AprilTagMetadata {
+    public String name;
+}
@@ -0,0 +1,8 @@
+package org.firstinspires.ftc.vision.apriltag;
+
+// Stand-in for the FTC SDK class, so opModes can be run on a desktop.
+public class AprilTagPoseFtc {
+    public double x;
+    public double y;
+    public double z;
+}
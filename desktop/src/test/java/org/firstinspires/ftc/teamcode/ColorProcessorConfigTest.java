@@ -0,0 +1,46 @@
+package org.firstinspires.ftc.teamcode;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.opencv.core.Point;
+
+//
+// These tests check that ColorProcessorConfig rejects settings the processor can't use.
+//
+public class ColorProcessorConfigTest {
+
+    @Test
+    public void validConfig() {
+        ColorProcessorConfig config = new ColorProcessorConfig().withSquareSize(1).withRegion(0, new Point(0, 0), 1, 1);
+
+        assertEquals(1, config.getSquareSize());
+        assertEquals(1, config.getRegionWidth(0));
+        assertEquals(1, config.getRegionHeight(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroSquareSize() {
+        new ColorProcessorConfig().withSquareSize(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeSquareSize() {
+        new ColorProcessorConfig(new Point[] { new Point(0, 0) }, new int[] { 60 }, new int[] { 80 }, 100, 75, 10, -5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroRegionWidth() {
+        new ColorProcessorConfig().withRegion(1, new Point(0, 0), 0, 80);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeRegionHeight() {
+        new ColorProcessorConfig(new Point[] { new Point(0, 0) }, new int[] { 60 }, new int[] { -1 }, 100, 75, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mismatchedArrays() {
+        new ColorProcessorConfig(new Point[] { new Point(0, 0) }, new int[] { 60, 60 }, new int[] { 80 }, 100, 75, 10);
+    }
+}
@@ -0,0 +1,195 @@
+package org.firstinspires.ftc.teamcode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+
+//
+// These tests check AsyncProcessing, where processFrame only copies the regions and
+// a worker thread does the search.
+//
+public class ColorVisionProcessorAsyncTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    // how long to wait for the worker before failing
+    private static final long TIMEOUT_MS = 10000;
+
+    private ColorVisionProcessor processor;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @After
+    public void closeProcessor() {
+        if (processor != null) {
+            processor.close();
+        }
+    }
+
+    // a queued frame is searched by the worker and its results show up
+    @Test
+    public void queueThenResults() throws InterruptedException {
+        processor = createProcessor(new ColorVisionProcessor());
+        SyntheticFrameGenerator generator = new SyntheticFrameGenerator(WIDTH, HEIGHT, 1);
+
+        generator.clear(0, 0, 128);
+        generator.addPatch(getRegionRect(processor, 0), 75, 200, 200);
+        generator.addPatch(getRegionRect(processor, 2), 105, 200, 200);
+
+        processor.processFrame(generator.getFrame(), System.nanoTime());
+
+        waitFor("first frame searched", () -> processor.isCameraInitialized() && processor.isRegionGreen(0));
+
+        assertTrue(processor.isRegionBlue(2));
+        assertEquals(-1, processor.getRegion(ColorVisionProcessor.Color_Enum.Color_Red));
+        assertEquals(0, processor.getWorkerErrorCount());
+        assertEquals(1, countWorkerThreads());
+    }
+
+    // frames that come faster than the worker can search them are dropped, and the newest one wins
+    @Test
+    public void droppedFrames() throws InterruptedException {
+        processor = createProcessor(new ColorVisionProcessor(makeManyRegions()));
+        SyntheticFrameGenerator greenFrame = new SyntheticFrameGenerator(WIDTH, HEIGHT, 2);
+        SyntheticFrameGenerator blueFrame = new SyntheticFrameGenerator(WIDTH, HEIGHT, 3);
+
+        greenFrame.clear(75, 200, 200);
+        blueFrame.clear(105, 200, 200);
+
+        for (int frame = 0; frame < 30; ++frame) {
+            processor.processFrame(greenFrame.getFrame(), System.nanoTime());
+        }
+        processor.processFrame(blueFrame.getFrame(), System.nanoTime());
+
+        // the last frame is never replaced, so it is always searched
+        waitFor("last frame searched", () -> processor.isCameraInitialized() && processor.isRegionBlue(0));
+
+        assertTrue("dropped " + processor.getDroppedFrameCount(), processor.getDroppedFrameCount() > 0);
+        assertFalse(processor.isRegionGreen(0));
+        assertEquals(0, processor.getWorkerErrorCount());
+    }
+
+    // close waits for the worker, and processFrame after close doesn't start a new one
+    @Test
+    public void processFrameAfterClose() throws InterruptedException {
+        processor = createProcessor(new ColorVisionProcessor());
+        SyntheticFrameGenerator greenFrame = new SyntheticFrameGenerator(WIDTH, HEIGHT, 4);
+        SyntheticFrameGenerator blueFrame = new SyntheticFrameGenerator(WIDTH, HEIGHT, 5);
+
+        greenFrame.clear(75, 200, 200);
+        blueFrame.clear(105, 200, 200);
+
+        processor.processFrame(greenFrame.getFrame(), System.nanoTime());
+        waitFor("first frame searched", () -> processor.isCameraInitialized() && processor.isRegionGreen(0));
+
+        processor.close();
+        assertEquals(0, countWorkerThreads());
+
+        long dropped = processor.getDroppedFrameCount();
+
+        processor.processFrame(blueFrame.getFrame(), System.nanoTime());
+        Thread.sleep(200);
+
+        assertEquals(0, countWorkerThreads());
+        assertEquals(dropped, processor.getDroppedFrameCount());
+        assertTrue(processor.isRegionGreen(0));
+
+        // closing again does nothing
+        processor.close();
+    }
+
+    // turning AsyncProcessing off while the worker is busy must not let the worker's
+    // older frame replace the newer results from processFrame
+    @Test
+    public void switchToSync() throws InterruptedException {
+        processor = createProcessor(new ColorVisionProcessor(makeManyRegions()));
+        SyntheticFrameGenerator greenFrame = new SyntheticFrameGenerator(WIDTH, HEIGHT, 6);
+        SyntheticFrameGenerator blueFrame = new SyntheticFrameGenerator(WIDTH, HEIGHT, 7);
+
+        greenFrame.clear(75, 200, 200);
+        blueFrame.clear(105, 200, 200);
+
+        for (int frame = 0; frame < 3; ++frame) {
+            processor.processFrame(greenFrame.getFrame(), System.nanoTime());
+        }
+
+        processor.AsyncProcessing = false;
+        processor.processFrame(blueFrame.getFrame(), System.nanoTime());
+
+        // the results from processFrame are there as soon as it returns
+        assertTrue(processor.isRegionBlue(0));
+
+        // and the worker doesn't replace them afterwards
+        Thread.sleep(500);
+        assertTrue(processor.isRegionBlue(0));
+        assertFalse(processor.isRegionGreen(0));
+    }
+
+    private ColorVisionProcessor createProcessor(ColorVisionProcessor newProcessor) {
+        newProcessor.AsyncProcessing = true;
+        newProcessor.init(WIDTH, HEIGHT, null);
+
+        return newProcessor;
+    }
+
+    // 24 large regions, so the worker is slow enough that frames back up
+    private ColorProcessorConfig makeManyRegions() {
+        int numRegions = 24;
+        Point[] topLeft = new Point[numRegions];
+        int[] width = new int[numRegions];
+        int[] height = new int[numRegions];
+
+        for (int region = 0; region < numRegions; ++region) {
+            topLeft[region] = new Point((region % 6) * 100, (region / 6) * 110);
+            width[region] = 100;
+            height[region] = 110;
+        }
+
+        ColorProcessorConfig defaults = new ColorProcessorConfig();
+
+        return new ColorProcessorConfig(topLeft, width, height,
+            defaults.getMinSaturation(), defaults.getMinBrightness(), defaults.getMaxStdDev());
+    }
+
+    private Rect getRegionRect(ColorVisionProcessor processor, int region) {
+        ColorProcessorConfig config = processor.getConfig();
+        Point topLeft = config.getRegionTopLeft(region);
+
+        return new Rect((int) topLeft.x, (int) topLeft.y, config.getRegionWidth(region), config.getRegionHeight(region));
+    }
+
+    // the number of worker threads that are still running
+    private int countWorkerThreads() {
+        int count = 0;
+
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("ColorVisionProcessor") && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private interface Condition {
+        boolean isTrue();
+    }
+
+    private void waitFor(String name, Condition condition) throws InterruptedException {
+        long endMs = System.currentTimeMillis() + TIMEOUT_MS;
+
+        while (!condition.isTrue()) {
+            assertTrue("timed out waiting for " + name, System.currentTimeMillis() < endMs);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.firstinspires.ftc.teamcode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+
+//
+// These tests check the telemetry from getTelemetryData, which is only updated
+// every TelemetryIntervalMs and only rebuilt when a value changes.
+//
+public class ColorVisionProcessorTelemetryTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    // values are not updated again until TelemetryIntervalMs has passed
+    @Test
+    public void throttledByInterval() {
+        ColorVisionProcessor processor = createProcessor();
+        SyntheticFrameGenerator greenFrame = makeFrame(processor, 75);
+        SyntheticFrameGenerator blueFrame = makeFrame(processor, 105);
+
+        processor.TelemetryIntervalMs = 60000;
+
+        // the first frame is always published
+        processor.processFrame(greenFrame.getFrame(), System.nanoTime());
+        assertEquals(ColorVisionProcessor.Color_Enum.Color_Green, getValue(processor, "Region 0 Color"));
+
+        // the results change right away, but the telemetry waits for the interval
+        processor.processFrame(blueFrame.getFrame(), System.nanoTime());
+        assertTrue(processor.isRegionBlue(0));
+        assertEquals(ColorVisionProcessor.Color_Enum.Color_Green, getValue(processor, "Region 0 Color"));
+
+        processor.TelemetryIntervalMs = 0;
+        processor.processFrame(blueFrame.getFrame(), System.nanoTime());
+        assertEquals(ColorVisionProcessor.Color_Enum.Color_Blue, getValue(processor, "Region 0 Color"));
+    }
+
+    // the same list is returned until a value changes, then a new one is built
+    @Test
+    public void listRebuiltOnlyOnChange() {
+        ColorVisionProcessor processor = createProcessor();
+        SyntheticFrameGenerator greenFrame = makeFrame(processor, 75);
+        SyntheticFrameGenerator blueFrame = makeFrame(processor, 105);
+
+        processor.TelemetryIntervalMs = 60000;
+        processor.processFrame(greenFrame.getFrame(), System.nanoTime());
+
+        List<ColorVisionProcessor.TelemetryData> first = processor.getTelemetryData();
+        assertSame(first, processor.getTelemetryData());
+
+        // frames that are not published don't change the list
+        processor.processFrame(blueFrame.getFrame(), System.nanoTime());
+        assertSame(first, processor.getTelemetryData());
+
+        processor.TelemetryIntervalMs = 0;
+        processor.processFrame(blueFrame.getFrame(), System.nanoTime());
+
+        List<ColorVisionProcessor.TelemetryData> second = processor.getTelemetryData();
+        assertNotSame(first, second);
+        assertSame(second, processor.getTelemetryData());
+        assertEquals(ColorVisionProcessor.Color_Enum.Color_Blue, getValue(processor, "Region 0 Color"));
+    }
+
+    // the query line is shown only for frames that were searched with a query
+    @Test
+    public void queryLineFollowsFrame() {
+        ColorVisionProcessor processor = createProcessor();
+        SyntheticFrameGenerator greenFrame = makeFrame(processor, 75);
+
+        processor.TelemetryIntervalMs = 0;
+
+        processor.processFrame(greenFrame.getFrame(), System.nanoTime());
+        assertNull(getValue(processor, "Query region"));
+
+        // setting a query doesn't change the telemetry of the frame already published
+        processor.setRegionColorQuery(0, ColorVisionProcessor.Color_Enum.Color_Green, 5);
+        assertNull(getValue(processor, "Query region"));
+
+        processor.processFrame(greenFrame.getFrame(), System.nanoTime());
+        assertEquals(0L, getValue(processor, "Query region"));
+
+        processor.clearQuery();
+        assertEquals(0L, getValue(processor, "Query region"));
+
+        processor.processFrame(greenFrame.getFrame(), System.nanoTime());
+        assertNull(getValue(processor, "Query region"));
+    }
+
+    private ColorVisionProcessor createProcessor() {
+        ColorVisionProcessor processor = new ColorVisionProcessor();
+
+        processor.init(WIDTH, HEIGHT, null);
+
+        return processor;
+    }
+
+    // a frame with one color in region 0
+    private SyntheticFrameGenerator makeFrame(ColorVisionProcessor processor, int hue) {
+        SyntheticFrameGenerator generator = new SyntheticFrameGenerator(WIDTH, HEIGHT, hue);
+        ColorProcessorConfig config = processor.getConfig();
+        Point topLeft = config.getRegionTopLeft(0);
+
+        generator.clear(0, 0, 128);
+        generator.addPatch(new Rect((int) topLeft.x, (int) topLeft.y, config.getRegionWidth(0), config.getRegionHeight(0)), hue, 200, 200);
+
+        return generator;
+    }
+
+    private Object getValue(ColorVisionProcessor processor, String caption) {
+        for (ColorVisionProcessor.TelemetryData data : processor.getTelemetryData()) {
+            if (data.caption.equals(caption)) {
+                return data.object;
+            }
+        }
+        return null;
+    }
+}
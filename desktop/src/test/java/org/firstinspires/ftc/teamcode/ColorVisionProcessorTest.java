@@ -0,0 +1,366 @@
+package org.firstinspires.ftc.teamcode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+
+//
+// These tests check the ColorVisionProcessor on a desktop computer using frames from the
+// SyntheticFrameGenerator, so no robot or camera is needed. Each color test is run with
+// both ways of checking squares (OpenCV and the pixel kernel).
+//
+// Timing is only checked loosely here (manyRegionsManyFrames), since a desktop is much
+// faster than the Control Hub. Use ConceptColorProcessorBenchmark on the robot for that.
+//
+public class ColorVisionProcessorTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    // the average time per frame allowed in manyRegionsManyFrames. This is a lot more than
+    // a desktop needs, so it only fails if something is badly wrong, such as work that grows
+    // from frame to frame.
+    private static final double MANY_REGIONS_BUDGET_MS = 150.0;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    // a gray frame should not have any color
+    @Test
+    public void noColor() {
+        for (boolean usePixelKernel : new boolean[] { false, true }) {
+            ColorVisionProcessor processor = createProcessor(usePixelKernel);
+            SyntheticFrameGenerator generator = new SyntheticFrameGenerator(WIDTH, HEIGHT, 1);
+
+            generator.clear(0, 0, 128);
+            processor.processFrame(generator.getFrame(), System.nanoTime());
+
+            String name = "kernel " + usePixelKernel;
+            assertEquals(name, -1, processor.getRegion(ColorVisionProcessor.Color_Enum.Color_Red));
+            assertEquals(name, -1, processor.getRegion(ColorVisionProcessor.Color_Enum.Color_Blue));
+            assertEquals(name, -1, processor.getRegion(ColorVisionProcessor.Color_Enum.Color_Green));
+        }
+    }
+
+    // green, red and blue in regions 0, 1 and 2
+    @Test
+    public void threeColors() {
+        for (boolean usePixelKernel : new boolean[] { false, true }) {
+            checkThreeColors(usePixelKernel, 0, 0);
+        }
+    }
+
+    @Test
+    public void threeColorsNoisy() {
+        for (boolean usePixelKernel : new boolean[] { false, true }) {
+            checkThreeColors(usePixelKernel, 2, 8);
+        }
+    }
+
+    private void checkThreeColors(boolean usePixelKernel, double hueNoise, double valueNoise) {
+        ColorVisionProcessor processor = createProcessor(usePixelKernel);
+        SyntheticFrameGenerator generator = new SyntheticFrameGenerator(WIDTH, HEIGHT, 2);
+
+        addThreeColors(generator, processor);
+        if (hueNoise > 0 || valueNoise > 0) {
+            generator.addNoise(hueNoise, valueNoise);
+        }
+
+        processor.processFrame(generator.getFrame(), System.nanoTime());
+
+        String name = "kernel " + usePixelKernel + " noise " + hueNoise;
+        assertTrue(name, processor.isRegionGreen(0));
+        assertTrue(name, processor.isRegionRed(1));
+        assertTrue(name, processor.isRegionBlue(2));
+        assertEquals(name, 1, processor.getRegion(ColorVisionProcessor.Color_Enum.Color_Red));
+        assertEquals(name, 2, processor.getRegion(ColorVisionProcessor.Color_Enum.Color_Blue));
+    }
+
+    // red just above 0 in region 0 and just below 180 in region 2
+    @Test
+    public void redBothSides() {
+        for (boolean usePixelKernel : new boolean[] { false, true }) {
+            ColorVisionProcessor processor = createProcessor(usePixelKernel);
+            SyntheticFrameGenerator generator = new SyntheticFrameGenerator(WIDTH, HEIGHT, 3);
+
+            generator.clear(0, 0, 128);
+            generator.addPatch(getRegionRect(processor, 0), 3, 200, 200);
+            generator.addPatch(getRegionRect(processor, 2), 176, 200, 200);
+
+            processor.processFrame(generator.getFrame(), System.nanoTime());
+
+            String name = "kernel " + usePixelKernel;
+            assertTrue(name, processor.isRegionRed(0));
+            assertFalse(name, processor.isRegionRed(1));
+            assertTrue(name, processor.isRegionRed(2));
+        }
+    }
+
+    // yellow fills half of region 0 and all of region 2, so region 2 has the most
+    @Test
+    public void mostArea() {
+        for (boolean usePixelKernel : new boolean[] { false, true }) {
+            ColorVisionProcessor processor = createProcessor(usePixelKernel);
+            SyntheticFrameGenerator generator = new SyntheticFrameGenerator(WIDTH, HEIGHT, 4);
+            Rect region0 = getRegionRect(processor, 0);
+
+            generator.clear(0, 0, 128);
+            generator.addPatch(new Rect(region0.x, region0.y, region0.width, region0.height / 2), 30, 200, 200);
+            generator.addPatch(getRegionRect(processor, 2), 30, 200, 200);
+
+            processor.processFrame(generator.getFrame(), System.nanoTime());
+
+            String name = "kernel " + usePixelKernel;
+            assertEquals(name, 2, processor.getRegion(ColorVisionProcessor.Color_Enum.Color_Yellow));
+            assertArrayEquals(name, new int[] { 2, 0 }, processor.getTopRegions(ColorVisionProcessor.Color_Enum.Color_Yellow, 3));
+            assertTrue(name, processor.isRegionDominant(ColorVisionProcessor.Color_Enum.Color_Yellow, 2, 1));
+        }
+    }
+
+    // a query should give the same answer as a full search while checking fewer squares
+    @Test
+    public void query() {
+        for (boolean usePixelKernel : new boolean[] { false, true }) {
+            ColorVisionProcessor processor = createProcessor(usePixelKernel);
+            SyntheticFrameGenerator generator = new SyntheticFrameGenerator(WIDTH, HEIGHT, 7);
+
+            addThreeColors(generator, processor);
+
+            processor.processFrame(generator.getFrame(), System.nanoTime());
+            int allSquares = processor.getSquaresVisited();
+
+            String name = "kernel " + usePixelKernel;
+
+            processor.setDominantRegionQuery(ColorVisionProcessor.Color_Enum.Color_Red, 10);
+            processor.processFrame(generator.getFrame(), System.nanoTime());
+            assertEquals(name, 1, processor.getQueryResult());
+            assertTrue(name, processor.getSquaresVisited() < allSquares);
+
+            processor.setRegionColorQuery(0, ColorVisionProcessor.Color_Enum.Color_Blue, 5);
+            processor.processFrame(generator.getFrame(), System.nanoTime());
+            assertEquals(name, -1, processor.getQueryResult());
+
+            processor.setRegionColorQuery(2, ColorVisionProcessor.Color_Enum.Color_Blue, 5);
+            processor.processFrame(generator.getFrame(), System.nanoTime());
+            assertEquals(name, 2, processor.getQueryResult());
+            assertTrue(name, processor.getSquaresVisited() < allSquares);
+        }
+    }
+
+    // a threshold change in the config is used starting with the next frame
+    @Test
+    public void thresholdsFromConfig() {
+        for (boolean usePixelKernel : new boolean[] { false, true }) {
+            ColorVisionProcessor processor = createProcessor(usePixelKernel);
+            SyntheticFrameGenerator generator = new SyntheticFrameGenerator(WIDTH, HEIGHT, 9);
+
+            generator.clear(0, 0, 128);
+            generator.addPatch(getRegionRect(processor, 0), 75, 200, 200);
+
+            String name = "kernel " + usePixelKernel;
+
+            processor.processFrame(generator.getFrame(), System.nanoTime());
+            assertTrue(name, processor.isRegionGreen(0));
+
+            processor.setConfig(processor.getConfig().withMinSaturation(220));
+            processor.processFrame(generator.getFrame(), System.nanoTime());
+            assertFalse(name, processor.isRegionGreen(0));
+        }
+    }
+
+    // a bad region is caught when the query is set, not later on the camera thread
+    @Test(expected = IllegalArgumentException.class)
+    public void queryRegionOutOfRange() {
+        ColorVisionProcessor processor = createProcessor(false);
+
+        processor.setRegionColorQuery(5, ColorVisionProcessor.Color_Enum.Color_Blue, 5);
+    }
+
+    // a journal with a different number of regions is caught when it is set
+    @Test(expected = IllegalArgumentException.class)
+    public void journalRegionMismatch() throws IOException {
+        ColorVisionProcessor processor = createProcessor(false);
+        FrameJournal journal = new FrameJournal(temporaryFolder.newFile("journal.bin"), 4, 10);
+
+        try {
+            processor.setJournal(journal);
+        } finally {
+            journal.close();
+        }
+    }
+
+    // the pixel kernel should give exactly the same square counts and scores as OpenCV
+    @Test
+    public void kernelMatchesOpenCV() {
+        ColorVisionProcessor openCVProcessor = createProcessor(false);
+        ColorVisionProcessor kernelProcessor = createProcessor(true);
+        SyntheticFrameGenerator generator = new SyntheticFrameGenerator(WIDTH, HEIGHT, 6);
+
+        generator.clear(0, 0, 128);
+        generator.addPatch(getRegionRect(openCVProcessor, 0), 75, 200, 200);
+        generator.addSplitRedPatch(getRegionRect(openCVProcessor, 1), 172, 8, 160, 200);
+        generator.addPatch(getRegionRect(openCVProcessor, 2), 30, 110, 90);
+        generator.addNoise(4, 20);
+
+        openCVProcessor.processFrame(generator.getFrame(), System.nanoTime());
+        kernelProcessor.processFrame(generator.getFrame(), System.nanoTime());
+
+        List<EnumMap<ColorVisionProcessor.Color_Enum, ColorVisionProcessor.ColorData>> openCVData = openCVProcessor.getColorData();
+        List<EnumMap<ColorVisionProcessor.Color_Enum, ColorVisionProcessor.ColorData>> kernelData = kernelProcessor.getColorData();
+
+        // make sure the frame really has red in it, so the red path is compared too
+        assertTrue(openCVData.get(1).get(ColorVisionProcessor.Color_Enum.Color_Red).squareCount > 0);
+
+        for (int region = 0; region < openCVData.size(); ++region) {
+            for (ColorVisionProcessor.Color_Enum color : ColorVisionProcessor.Color_Enum.values()) {
+                ColorVisionProcessor.ColorData expected = openCVData.get(region).get(color);
+                ColorVisionProcessor.ColorData actual = kernelData.get(region).get(color);
+                String name = "region " + region + " " + color;
+
+                assertEquals(name, expected.squareCount, actual.squareCount);
+                assertEquals(name, expected.score, actual.score, 0.0);
+                assertEquals(name, expected.x_location, actual.x_location);
+                assertEquals(name, expected.y_location, actual.y_location);
+            }
+        }
+    }
+
+    // the histogram summary should find the same colors, and the histogram should peak at the patch hue
+    @Test
+    public void hueHistogram() {
+        ColorVisionProcessor processor = createProcessor(false);
+        SyntheticFrameGenerator generator = new SyntheticFrameGenerator(WIDTH, HEIGHT, 8);
+
+        processor.UseHueHistogram = true;
+
+        addThreeColors(generator, processor);
+        generator.addNoise(2, 8);
+
+        processor.processFrame(generator.getFrame(), System.nanoTime());
+
+        int[] histogram = processor.getHueHistogram(0);
+        int peakHue = 0;
+        for (int hue = 0; hue < histogram.length; ++hue) {
+            if (histogram[hue] > histogram[peakHue]) {
+                peakHue = hue;
+            }
+        }
+
+        assertTrue(processor.isRegionGreen(0));
+        assertTrue(processor.isRegionRed(1));
+        assertTrue(processor.isRegionBlue(2));
+        assertTrue("peak hue " + peakHue, Math.abs(peakHue - 75) <= 3);
+    }
+
+    // 24 regions over many frames, with the colors changing every frame. Each frame's
+    // results must be right, and the average time must be within a generous budget.
+    @Test
+    public void manyRegionsManyFrames() {
+        final int numFrames = 60;
+        final int[] hues = { 75, 177, 105 };
+
+        for (String search : new String[] { "opencv", "kernel", "histogram" }) {
+            ColorVisionProcessor processor = new ColorVisionProcessor(makeManyRegions());
+            processor.UsePixelKernel = search.equals("kernel");
+            processor.UseHueHistogram = search.equals("histogram");
+            processor.init(WIDTH, HEIGHT, null);
+
+            // the colors move over by one region in the second frame
+            SyntheticFrameGenerator[] generators = new SyntheticFrameGenerator[2];
+            for (int shift = 0; shift < generators.length; ++shift) {
+                generators[shift] = new SyntheticFrameGenerator(WIDTH, HEIGHT, 10 + shift);
+                generators[shift].clear(0, 0, 128);
+                for (int region = 0; region < processor.NumRegions; ++region) {
+                    generators[shift].addPatch(getRegionRect(processor, region), hues[(region + shift) % hues.length], 200, 200);
+                }
+                generators[shift].addNoise(2, 8);
+            }
+
+            long totalNanos = 0;
+
+            for (int frame = 0; frame < numFrames; ++frame) {
+                int shift = frame % generators.length;
+                Mat input = generators[shift].getFrame();
+
+                long startNanos = System.nanoTime();
+                processor.processFrame(input, startNanos);
+                totalNanos += System.nanoTime() - startNanos;
+
+                for (int region = 0; region < processor.NumRegions; ++region) {
+                    String name = search + " frame " + frame + " region " + region;
+                    int hue = hues[(region + shift) % hues.length];
+
+                    assertEquals(name, hue == 75, processor.isRegionGreen(region));
+                    assertEquals(name, hue == 177, processor.isRegionRed(region));
+                    assertEquals(name, hue == 105, processor.isRegionBlue(region));
+                }
+            }
+
+            processor.close();
+
+            double averageMs = totalNanos / 1.0e6 / numFrames;
+            assertTrue(search + " average " + averageMs + " ms", averageMs < MANY_REGIONS_BUDGET_MS);
+        }
+    }
+
+    // 24 regions of the normal size (60x80) in a grid that covers most of the frame
+    private ColorProcessorConfig makeManyRegions() {
+        int numRegions = 24;
+        Point[] topLeft = new Point[numRegions];
+        int[] width = new int[numRegions];
+        int[] height = new int[numRegions];
+
+        for (int region = 0; region < numRegions; ++region) {
+            topLeft[region] = new Point((region % 6) * 106, (region / 6) * 118);
+            width[region] = 60;
+            height[region] = 80;
+        }
+
+        ColorProcessorConfig defaults = new ColorProcessorConfig();
+
+        return new ColorProcessorConfig(topLeft, width, height,
+            defaults.getMinSaturation(), defaults.getMinBrightness(), defaults.getMaxStdDev());
+    }
+
+    // green in region 0, red on both sides of 0/180 in region 1 and blue in region 2
+    private void addThreeColors(SyntheticFrameGenerator generator, ColorVisionProcessor processor) {
+        generator.clear(0, 0, 128);
+        generator.addPatch(getRegionRect(processor, 0), 75, 200, 200);
+        generator.addSplitRedPatch(getRegionRect(processor, 1), 177, 2, 200, 200);
+        generator.addPatch(getRegionRect(processor, 2), 105, 200, 200);
+    }
+
+    private ColorVisionProcessor createProcessor(boolean usePixelKernel) {
+        ColorVisionProcessor processor = new ColorVisionProcessor();
+
+        processor.UsePixelKernel = usePixelKernel;
+        processor.init(WIDTH, HEIGHT, null);
+
+        return processor;
+    }
+
+    private Rect getRegionRect(ColorVisionProcessor processor, int region) {
+        ColorProcessorConfig config = processor.getConfig();
+        Point topLeft = config.getRegionTopLeft(region);
+
+        return new Rect((int) topLeft.x, (int) topLeft.y, config.getRegionWidth(region), config.getRegionHeight(region));
+    }
+}
@@ -0,0 +1,154 @@
+package org.firstinspires.ftc.teamcode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.firstinspires.ftc.robotcore.external.hardware.camera.WebcamName;
+import org.firstinspires.ftc.vision.VisionPortal;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+//
+// This test runs ConceptMultiVisionProcessor with the desktop stand-ins for the opMode
+// and the VisionPortal (see src/stubs), using a synthetic frame in place of the camera.
+//
+public class ConceptMultiVisionProcessorTest {
+
+    // how long to wait for the opMode before failing
+    private static final long TIMEOUT_MS = 10000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ConceptMultiVisionProcessor opMode;
+    private Thread opModeThread;
+    private volatile Throwable opModeError = null;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @After
+    public void stopOpMode() throws InterruptedException {
+        if (opModeThread != null && opModeThread.isAlive()) {
+            opMode.requestOpModeStop();
+            opModeThread.join(TIMEOUT_MS);
+        }
+
+        VisionPortal.frameSource = null;
+        ConceptMultiVisionProcessor.USE_JOURNAL = false;
+    }
+
+    // the opMode finds the colors, the bumpers change MinSaturation once per press,
+    // and the journal has the frames after the opMode stops
+    @Test
+    public void runOpMode() throws InterruptedException, IOException {
+        File journalFile = temporaryFolder.newFile("colorJournal.bin");
+
+        ConceptMultiVisionProcessor.USE_JOURNAL = true;
+        ConceptMultiVisionProcessor.JOURNAL_FILE = journalFile.getPath();
+
+        // blue in region 0 and red in region 2, where the opMode puts its regions
+        final SyntheticFrameGenerator generator = new SyntheticFrameGenerator(VisionPortal.WIDTH, VisionPortal.HEIGHT, 1);
+        generator.clear(0, 0, 128);
+        generator.addPatch(new Rect(109, 98, 60, 80), 105, 200, 200);
+        generator.addPatch(new Rect(253, 98, 100, 100), 177, 200, 200);
+
+        VisionPortal.frameSource = new VisionPortal.FrameSource() {
+            @Override
+            public Mat getFrame() {
+                return generator.getFrame();
+            }
+        };
+
+        startOpMode();
+
+        waitForValue("Red Region", "2");
+        assertEquals("0", getValue("Blue Region"));
+        assertEquals("100", getValue("Min Saturation (bumpers)"));
+
+        // holding the bumper only changes it once
+        opMode.gamepad1.right_bumper = true;
+        waitForValue("Min Saturation (bumpers)", "105");
+        Thread.sleep(200);
+        assertEquals("105", getValue("Min Saturation (bumpers)"));
+        opMode.gamepad1.right_bumper = false;
+
+        opMode.gamepad1.left_bumper = true;
+        waitForValue("Min Saturation (bumpers)", "100");
+        opMode.gamepad1.left_bumper = false;
+
+        opMode.requestOpModeStop();
+        opModeThread.join(TIMEOUT_MS);
+        assertFalse("opMode did not stop", opModeThread.isAlive());
+        assertNull(opModeError);
+        assertEquals(0, countThreads("VisionPortal"));
+
+        FrameJournalReader.Journal journal = FrameJournalReader.read(Files.readAllBytes(journalFile.toPath()));
+
+        assertEquals(3, journal.numRegions);
+        assertTrue("frames saved " + journal.recordsWritten, journal.recordsWritten > 0);
+
+        FrameJournalReader.Record last = journal.records[journal.records.length - 1];
+        assertEquals(ColorVisionProcessor.Color_Enum.Color_Blue.ordinal(), last.regionColor[0]);
+        assertEquals(ColorVisionProcessor.Color_Enum.Color_None.ordinal(), last.regionColor[1]);
+        assertEquals(ColorVisionProcessor.Color_Enum.Color_Red.ordinal(), last.regionColor[2]);
+    }
+
+    private void startOpMode() {
+        opMode = new ConceptMultiVisionProcessor();
+        opMode.hardwareMap.put("Webcam 1", new WebcamName("Webcam 1"));
+
+        opModeThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    opMode.runOpMode();
+                } catch (Throwable e) {
+                    opModeError = e;
+                }
+            }
+        }, "opMode");
+        opModeThread.start();
+
+        opMode.requestStart();
+    }
+
+    private String getValue(String caption) {
+        return opMode.telemetry.getLastValue(caption);
+    }
+
+    private void waitForValue(String caption, String value) throws InterruptedException {
+        long endMs = System.currentTimeMillis() + TIMEOUT_MS;
+
+        while (!value.equals(getValue(caption))) {
+            assertNull(opModeError);
+            assertTrue("timed out waiting for " + caption + " to be " + value + ", it is " + getValue(caption),
+                System.currentTimeMillis() < endMs);
+            Thread.sleep(5);
+        }
+    }
+
+    private int countThreads(String name) {
+        int count = 0;
+
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(name) && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,161 @@
+package org.firstinspires.ftc.teamcode;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+//
+// These tests write frames with FrameJournal and read them back with FrameJournalReader.
+//
+public class FrameJournalTest {
+
+    private static final int NUM_REGIONS = 3;
+
+    private final ColorVisionProcessor.Color_Enum[] colors = ColorVisionProcessor.Color_Enum.values();
+
+    // only used to create ColorData objects
+    private ColorVisionProcessor processor;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Before
+    public void createProcessor() {
+        processor = new ColorVisionProcessor();
+    }
+
+    // fewer frames than the file holds
+    @Test
+    public void roundTrip() throws IOException {
+        checkRoundTrip(10, 4);
+    }
+
+    // more frames than the file holds, so it wraps around and only the newest are kept
+    @Test
+    public void roundTripWrapped() throws IOException {
+        checkRoundTrip(5, 13);
+    }
+
+    @Test
+    public void emptyJournal() throws IOException {
+        File file = folder.newFile("empty.bin");
+        new FrameJournal(file, NUM_REGIONS, 5).close();
+
+        FrameJournalReader.Journal journal = FrameJournalReader.read(Files.readAllBytes(file.toPath()));
+
+        assertEquals(0, journal.recordsWritten);
+        assertEquals(0, journal.records.length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroMaxRecords() throws IOException {
+        new FrameJournal(folder.newFile("zero.bin"), NUM_REGIONS, 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void notAJournal() throws IOException {
+        FrameJournalReader.read(new byte[64]);
+    }
+
+    private void checkRoundTrip(int maxRecords, int numFrames) throws IOException {
+        File file = folder.newFile("journal.bin");
+        FrameJournal writer = new FrameJournal(file, NUM_REGIONS, maxRecords);
+
+        for (int frame = 0; frame < numFrames; ++frame) {
+            writer.write(captureTime(frame), frame + 1, frame + 2, frame + 3, frame * 10, frame % NUM_REGIONS,
+                regionColor(frame), colorData(frame));
+        }
+        writer.close();
+
+        FrameJournalReader.Journal journal = FrameJournalReader.read(Files.readAllBytes(file.toPath()));
+
+        assertEquals(NUM_REGIONS, journal.numRegions);
+        assertEquals(colors.length, journal.numColors);
+        assertEquals(maxRecords, journal.maxRecords);
+        assertEquals(numFrames, journal.recordsWritten);
+
+        int count = Math.min(numFrames, maxRecords);
+        assertEquals(count, journal.records.length);
+
+        for (int index = 0; index < count; ++index) {
+            int frame = numFrames - count + index;
+            FrameJournalReader.Record record = journal.records[index];
+
+            assertEquals(frame, record.sequence);
+            assertEquals(captureTime(frame), record.captureTime);
+            assertEquals(frame + 1, record.queueLatency);
+            assertEquals(frame + 2, record.convertTime);
+            assertEquals(frame + 3, record.searchTime);
+            assertEquals(frame * 10, record.squaresVisited);
+            assertEquals(frame % NUM_REGIONS, record.queryRegion);
+
+            ColorVisionProcessor.Color_Enum[] expectedColor = regionColor(frame);
+
+            for (int region = 0; region < NUM_REGIONS; ++region) {
+                assertEquals(expectedColor[region].ordinal(), record.regionColor[region]);
+
+                for (int color = 0; color < colors.length; ++color) {
+                    assertEquals(squareCount(frame, region, color), record.squareCount[region][color]);
+                    assertEquals(score(frame, region, color), record.score[region][color], 0.0f);
+                }
+            }
+        }
+    }
+
+    private long captureTime(int frame) {
+        return 1000000000L + frame * 33000000L;
+    }
+
+    private ColorVisionProcessor.Color_Enum[] regionColor(int frame) {
+        ColorVisionProcessor.Color_Enum[] regionColor = new ColorVisionProcessor.Color_Enum[NUM_REGIONS];
+
+        for (int region = 0; region < NUM_REGIONS; ++region) {
+            regionColor[region] = colors[(frame + region) % colors.length];
+        }
+        return regionColor;
+    }
+
+    private int squareCount(int frame, int region, int color) {
+        return frame * 100 + region * 10 + color;
+    }
+
+    // a value that is exact as a float
+    private float score(int frame, int region, int color) {
+        return frame + region * 0.25f + color * 0.5f;
+    }
+
+    private List<EnumMap<ColorVisionProcessor.Color_Enum, ColorVisionProcessor.ColorData>> colorData(int frame) {
+        List<EnumMap<ColorVisionProcessor.Color_Enum, ColorVisionProcessor.ColorData>> colorData = new ArrayList<>();
+
+        for (int region = 0; region < NUM_REGIONS; ++region) {
+            EnumMap<ColorVisionProcessor.Color_Enum, ColorVisionProcessor.ColorData> regionData =
+                new EnumMap<>(ColorVisionProcessor.Color_Enum.class);
+
+            for (ColorVisionProcessor.Color_Enum color : colors) {
+                ColorVisionProcessor.ColorData data = processor.new ColorData();
+                data.color = color;
+                data.squareCount = squareCount(frame, region, color.ordinal());
+                data.score = score(frame, region, color.ordinal());
+                regionData.put(color, data);
+            }
+            colorData.add(regionData);
+        }
+        return colorData;
+    }
+}